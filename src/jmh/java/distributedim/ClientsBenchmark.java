@@ -0,0 +1,192 @@
+package distributedim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Many users in one process: each is a MessagingClient accepting chats on a port of its
+ * own, and all of them share one chat engine and an in-process ring. Measured are every
+ * client logging in at once, and every client opening a conversation with the next by
+ * username and sending it messages until all have arrived. The clients log out between
+ * iterations.
+ * @author Kat Winter
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+// The exported Nodes keep RMI's threads running, so let the forked JVM exit as soon as it has reported
+@Fork(value = 3, jvmArgsAppend = "-Djmh.shutdownTimeout=0")
+public class ClientsBenchmark {
+
+	/**
+	 * The clients and the ring they share
+	 */
+	@State(Scope.Thread)
+	public static class Users {
+
+		@Param({ "1000" })
+		public int clients;
+
+		@Param({ "20" })
+		public int messages;
+
+		@Param({ "4" })
+		public int ringSize;
+
+		List<Node> ring;
+		AsyncDHT[] dhts;
+		ChatEngine engine;
+		MessagingClient[] users;
+		Semaphore received;
+
+		@Setup(Level.Trial)
+		public void setUp() throws Exception {
+
+			ring = RoutingBenchmark.ring(ringSize);
+			dhts = new AsyncDHT[ringSize];
+			for (int i = 0; i < ringSize; i++) {
+				dhts[i] = new AsyncDHT(ring.get(i));
+			}
+
+			received = new Semaphore(0);
+			MessagingClient.Listener counter = new MessagingClient.Listener() {
+				public void conversationOpened(ChatSession session, boolean incoming) {
+				}
+
+				public void messageReceived(ChatSession session, String message) {
+					received.release();
+				}
+
+				public void conversationClosed(ChatSession session) {
+				}
+
+				public void mailReceived(List<String> messages) {
+				}
+
+				public void groupMessageReceived(String group, String sender, String message) {
+				}
+			};
+
+			engine = new ChatEngine();
+			users = new MessagingClient[clients];
+
+			for (int i = 0; i < clients; i++) {
+				users[i] = new MessagingClient(dhts[i % ringSize], engine, "127.0.0.1", 0);
+				users[i].setListener(counter);
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+
+			System.out.println(clients + " clients used " + engine.getConnectionCount() + " connections and left "
+					+ Thread.activeCount() + " threads running");
+
+			engine.shutdown();
+			for (AsyncDHT dht : dhts) {
+				dht.shutdown();
+			}
+			RoutingBenchmark.leave(ring);
+		}
+
+		int loginAll() {
+
+			List<CompletableFuture<Boolean>> logins = new ArrayList<CompletableFuture<Boolean>>();
+			for (int i = 0; i < clients; i++) {
+				logins.add(users[i].login("user" + i));
+			}
+
+			int loggedIn = 0;
+			for (CompletableFuture<Boolean> login : logins) {
+				if (login.join()) {
+					loggedIn++;
+				}
+			}
+			return loggedIn;
+		}
+
+		void logoutAll() {
+
+			List<CompletableFuture<Void>> logouts = new ArrayList<CompletableFuture<Void>>();
+			for (MessagingClient user : users) {
+				logouts.add(user.logout());
+			}
+
+			for (CompletableFuture<Void> logout : logouts) {
+				logout.join();
+			}
+		}
+	}
+
+	/**
+	 * Logging in is measured from every client logged out
+	 */
+	@State(Scope.Thread)
+	public static class LoggedOut extends Users {
+
+		@TearDown(Level.Iteration)
+		public void logout() {
+			logoutAll();
+		}
+	}
+
+	/**
+	 * Chatting is measured from every client logged in
+	 */
+	@State(Scope.Thread)
+	public static class LoggedIn extends Users {
+
+		@Setup(Level.Iteration)
+		public void login() {
+			loginAll();
+		}
+
+		@TearDown(Level.Iteration)
+		public void logout() {
+			logoutAll();
+		}
+	}
+
+	@Benchmark
+	public int login(LoggedOut loggedOut) {
+		return loggedOut.loginAll();
+	}
+
+	@Benchmark
+	public int chat(LoggedIn loggedIn) throws InterruptedException {
+
+		List<CompletableFuture<ChatSession>> opens = new ArrayList<CompletableFuture<ChatSession>>();
+
+		for (int i = 0; i < loggedIn.clients; i++) {
+			opens.add(loggedIn.users[i].openConversation("user" + ((i + 1) % loggedIn.clients)));
+		}
+
+		for (CompletableFuture<ChatSession> open : opens) {
+			ChatSession session = open.join();
+			for (int m = 0; m < loggedIn.messages; m++) {
+				session.send("message " + m);
+			}
+		}
+
+		loggedIn.received.acquire(loggedIn.clients * loggedIn.messages);
+		return loggedIn.clients * loggedIn.messages;
+	}
+}
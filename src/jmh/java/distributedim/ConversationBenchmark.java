@@ -0,0 +1,100 @@
+package distributedim;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Messages sent through one conversation over loopback, added to a Transcript at each
+ * end as the Conversation view and the Client do, either one at a time and waited for,
+ * or a stream of them waited for together. The Swing views themselves are left out so
+ * that this runs headless.
+ * @author Kat Winter
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+@State(Scope.Thread)
+public class ConversationBenchmark {
+
+	@Param({ "1000" })
+	public int messages;
+
+	private ChatEngine server;
+	private ChatEngine client;
+	private ChatSession session;
+	private Transcript mine;
+	private Semaphore received;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+
+		received = new Semaphore(0);
+
+		final Transcript theirs = new Transcript(Transcript.DEFAULT_CAPACITY);
+
+		server = new ChatEngine();
+		int port = server.listen(0, new ChatEngine.Acceptor() {
+			public void accepted(ChatSession session) {
+				session.setListener(new ChatSession.Listener() {
+					public void messageReceived(ChatSession session, String message) {
+						theirs.add("Them: " + message);
+						received.release();
+					}
+
+					public void sessionClosed(ChatSession session) {
+					}
+				});
+			}
+		});
+
+		client = new ChatEngine();
+		session = client.connect("127.0.0.1", port);
+		mine = new Transcript(Transcript.DEFAULT_CAPACITY);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+
+		client.shutdown();
+		server.shutdown();
+	}
+
+	@Benchmark
+	public Transcript roundtrip() throws InterruptedException {
+		return send(1);
+	}
+
+	@Benchmark
+	public Transcript stream() throws InterruptedException {
+		return send(messages);
+	}
+
+	private Transcript send(int count) throws InterruptedException {
+
+		for (int j = 0; j < count; j++) {
+			String message = "message number " + j + " of the benchmark conversation";
+			mine.add("You: " + message);
+			session.send(message);
+		}
+
+		received.acquire(count);
+		return mine;
+	}
+}
@@ -0,0 +1,248 @@
+package distributedim;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The same chat messages in the line protocol Conversation used to speak and in chat
+ * frames: sent over loopback and waited for, one message per write ("lines", "frames")
+ * or 64 to a write ("batches"), and parsed alone from memory
+ * @author Kat Winter
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class FramingBenchmark {
+
+	/**
+	 * Messages sent in batches of this many by "batches"
+	 */
+	private static final int BATCH = 64;
+
+	/**
+	 * A connection over loopback speaking one of the protocols
+	 */
+	@State(Scope.Thread)
+	public static class Loopback {
+
+		@Param({ "lines", "frames", "batches" })
+		public String format;
+
+		@Param({ "1000" })
+		public int messages;
+
+		@Param({ "64" })
+		public int size;
+
+		String message;
+		List<String> batch;
+		Semaphore received;
+
+		ServerSocket listener;
+		Socket socket;
+		PrintStream output;
+
+		ChatEngine server;
+		ChatEngine client;
+		ChatSession session;
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+
+			message = message(size);
+			batch = Collections.nCopies(BATCH, message);
+			received = new Semaphore(0);
+
+			if (format.equals("lines")) {
+
+				listener = new ServerSocket(0);
+
+				new Thread() {
+					public void run() {
+						try {
+							BufferedReader input = new BufferedReader(new InputStreamReader(listener.accept().getInputStream()));
+							while (input.readLine() != null) {
+								received.release();
+							}
+						} catch (IOException e) {
+							// Closed
+						}
+					}
+				}.start();
+
+				socket = new Socket("127.0.0.1", listener.getLocalPort());
+				socket.setTcpNoDelay(true);
+				output = new PrintStream(socket.getOutputStream());
+			}
+
+			else {
+
+				server = new ChatEngine();
+				int port = server.listen(0, new ChatEngine.Acceptor() {
+					public void accepted(ChatSession session) {
+						session.setListener(new ChatSession.Listener() {
+							public void messageReceived(ChatSession session, String message) {
+								received.release();
+							}
+
+							public void sessionClosed(ChatSession session) {
+							}
+						});
+					}
+				});
+
+				client = new ChatEngine();
+				session = client.connect("127.0.0.1", port);
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+
+			if (socket != null) {
+				socket.close();
+				listener.close();
+			}
+
+			else {
+				client.shutdown();
+				server.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * The bytes of the messages in one of the protocols, as read from the network
+	 */
+	@State(Scope.Thread)
+	public static class Parsing {
+
+		@Param({ "lines", "frames" })
+		public String format;
+
+		@Param({ "1000" })
+		public int messages;
+
+		@Param({ "64" })
+		public int size;
+
+		byte[] bytes;
+		byte[] chunk = new byte[64 * 1024];
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+
+			String message = message(size);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			PrintStream lines = new PrintStream(out);
+
+			for (int i = 0; i < messages; i++) {
+
+				if (format.equals("lines")) {
+					lines.println(message);
+				}
+
+				else {
+					ByteBuffer frame = ChatFrame.encode(ChatFrame.DATA, 1, message);
+					out.write(frame.array(), 0, frame.limit());
+				}
+			}
+
+			lines.flush();
+			bytes = out.toByteArray();
+		}
+	}
+
+	@Benchmark
+	public int send(Loopback loopback) throws InterruptedException {
+
+		if (loopback.output != null) {
+			for (int i = 0; i < loopback.messages; i++) {
+				loopback.output.println(loopback.message);
+			}
+		}
+
+		else if (loopback.format.equals("batches")) {
+			for (int i = 0; i < loopback.messages; i += BATCH) {
+				loopback.session.send(loopback.batch.subList(0, Math.min(BATCH, loopback.messages - i)));
+			}
+		}
+
+		else {
+			for (int i = 0; i < loopback.messages; i++) {
+				loopback.session.send(loopback.message);
+			}
+		}
+
+		loopback.received.acquire(loopback.messages);
+		return loopback.messages;
+	}
+
+	@Benchmark
+	public long parse(Parsing parsing) throws IOException {
+
+		if (parsing.format.equals("lines")) {
+
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(parsing.bytes)));
+			long characters = 0;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				characters += line.length();
+			}
+			return characters;
+		}
+
+		final long[] characters = new long[1];
+		ChatFrame.Decoder decoder = new ChatFrame.Decoder();
+		ChatFrame.Handler handler = new ChatFrame.Handler() {
+			public void frame(byte type, int stream, byte[] bytes, int offset, int length) {
+				characters[0] += new String(bytes, offset, length, StandardCharsets.UTF_8).length();
+			}
+		};
+
+		// Handed over in chunks, as a read from the network would
+		for (int offset = 0; offset < parsing.bytes.length; offset += parsing.chunk.length) {
+			int length = Math.min(parsing.chunk.length, parsing.bytes.length - offset);
+			System.arraycopy(parsing.bytes, offset, parsing.chunk, 0, length);
+			decoder.decode(parsing.chunk, length, handler);
+		}
+
+		return characters[0];
+	}
+
+	private static String message(int size) {
+
+		char[] text = new char[size];
+		Arrays.fill(text, 'x');
+		return new String(text);
+	}
+}
@@ -0,0 +1,107 @@
+package distributedim;
+
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A group message relayed through the fan-out tree until every other member has it, for
+ * groups of increasing size. Members are headless clients sharing one chat engine and an
+ * in-process ring, and take turns sending. Each member sends once before the trial so
+ * that opening its relay streams is not timed.
+ * @author Kat Winter
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+// The exported Nodes keep RMI's threads running, so let the forked JVM exit as soon as it has reported
+@Fork(value = 3, jvmArgsAppend = "-Djmh.shutdownTimeout=0")
+@State(Scope.Thread)
+public class GroupsBenchmark {
+
+	@Param({ "4", "16", "64" })
+	public int members;
+
+	private List<Node> ring;
+	private AsyncDHT dht;
+	private ChatEngine engine;
+	private MessagingClient[] clients;
+	private Semaphore delivered;
+	private int sender;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+
+		ring = RoutingBenchmark.ring(4);
+		dht = new AsyncDHT(ring.get(0));
+		engine = new ChatEngine();
+		delivered = new Semaphore(0);
+
+		MessagingClient.Listener counter = new MessagingClient.Listener() {
+			public void conversationOpened(ChatSession session, boolean incoming) {
+			}
+
+			public void messageReceived(ChatSession session, String message) {
+			}
+
+			public void conversationClosed(ChatSession session) {
+			}
+
+			public void mailReceived(List<String> mail) {
+			}
+
+			public void groupMessageReceived(String group, String sender, String message) {
+				delivered.release();
+			}
+		};
+
+		clients = new MessagingClient[members];
+
+		for (int i = 0; i < members; i++) {
+			clients[i] = new MessagingClient(dht, engine, "127.0.0.1", 0);
+			clients[i].setListener(counter);
+			clients[i].login("member" + i).join();
+			clients[i].joinGroup("bench").join();
+		}
+
+		for (int i = 0; i < members; i++) {
+			clients[i].sendToGroup("bench", "hello");
+		}
+		delivered.acquire(members * (members - 1));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+
+		for (MessagingClient client : clients) {
+			client.logout().join();
+		}
+
+		engine.shutdown();
+		dht.shutdown();
+		RoutingBenchmark.leave(ring);
+	}
+
+	@Benchmark
+	public int send() throws InterruptedException {
+
+		clients[sender++ % members].sendToGroup("bench", "message");
+		delivered.acquire(members - 1);
+		return members;
+	}
+}
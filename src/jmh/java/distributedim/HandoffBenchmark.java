@@ -0,0 +1,138 @@
+package distributedim;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A Node joining a ring holding a given number of keys and being handed its share of
+ * them by transferData, or leaving and handing them all on by fullTransfer. Each call
+ * is timed on its own, the opposite move being made between calls so that each call
+ * starts from the same ring.
+ * @author Kat Winter
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+// The exported Nodes keep RMI's threads running, so let the forked JVM exit as soon as it has reported
+@Fork(value = 3, jvmArgsAppend = "-Djmh.shutdownTimeout=0")
+public class HandoffBenchmark {
+
+	/**
+	 * A ring holding the keys, and a Node to join it
+	 */
+	@State(Scope.Thread)
+	public static class Ring {
+
+		@Param({ "1", "8" })
+		public int ringSize;
+
+		@Param({ "10000", "100000" })
+		public int keys;
+
+		List<Node> ring;
+		Node joiner;
+
+		@Setup(Level.Trial)
+		public void setUp() throws Exception {
+
+			ring = RoutingBenchmark.ring(ringSize);
+			joiner = new Node("10.2.0.1");
+
+			// Fill each Node with the keys it owns directly, as routing every put would only slow the set up
+			TreeMap<Identifier, Node> owners = new TreeMap<Identifier, Node>();
+			for (Node node : ring) {
+				owners.put(node.getID(), node);
+			}
+
+			Map<Node, List<Identifier>> owned = new HashMap<Node, List<Identifier>>();
+
+			for (int i = 0; i < keys; i++) {
+
+				Identifier key = Hash.hashID("user" + i);
+				Map.Entry<Identifier, Node> owner = owners.ceilingEntry(key);
+				if (owner == null) {
+					owner = owners.lastEntry();
+				}
+
+				List<Identifier> list = owned.get(owner.getValue());
+				if (list == null) {
+					list = new ArrayList<Identifier>();
+					owned.put(owner.getValue(), list);
+				}
+				list.add(key);
+			}
+
+			for (Map.Entry<Node, List<Identifier>> entry : owned.entrySet()) {
+
+				Identifier[] batch = entry.getValue().toArray(new Identifier[entry.getValue().size()]);
+				Object[] data = new Object[batch.length];
+				for (int i = 0; i < batch.length; i++) {
+					data[i] = "10.0." + (i >> 8 & 0xff) + "." + (i & 0xff);
+				}
+				entry.getKey().insertBatch(batch, data);
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			RoutingBenchmark.leave(ring);
+		}
+	}
+
+	/**
+	 * Joining is measured from outside the ring
+	 */
+	@State(Scope.Thread)
+	public static class Outside extends Ring {
+
+		@TearDown(Level.Iteration)
+		public void leave() {
+			joiner.leave();
+		}
+	}
+
+	/**
+	 * Leaving is measured from inside the ring
+	 */
+	@State(Scope.Thread)
+	public static class Inside extends Ring {
+
+		@Setup(Level.Iteration)
+		public void join() throws Exception {
+			joiner.join("localhost");
+		}
+	}
+
+	@Benchmark
+	public Node transferData(Outside outside) throws Exception {
+
+		outside.joiner.join("localhost");
+		return outside.joiner;
+	}
+
+	@Benchmark
+	public Node fullTransfer(Inside inside) {
+
+		inside.joiner.leave();
+		return inside.joiner;
+	}
+}
@@ -0,0 +1,59 @@
+package distributedim;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hashing usernames as every DHT operation does, to the hex Strings the Node's String
+ * methods take or straight to Identifiers
+ * @author Kat Winter
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+@State(Scope.Thread)
+public class HashBenchmark {
+
+	@Param({ "1024" })
+	public int keys;
+
+	private String[] usernames;
+	private int i;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+
+		usernames = new String[keys];
+		for (int i = 0; i < keys; i++) {
+			usernames[i] = "user" + i + "@example.org";
+		}
+	}
+
+	@Benchmark
+	public String hash() {
+		return Hash.hash(nextUsername());
+	}
+
+	@Benchmark
+	public Identifier hashID() {
+		return Hash.hashID(nextUsername());
+	}
+
+	private String nextUsername() {
+		return usernames[(i++ & Integer.MAX_VALUE) % usernames.length];
+	}
+}
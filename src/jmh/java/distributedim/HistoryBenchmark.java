@@ -0,0 +1,129 @@
+package distributedim;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Chat history in its memory-mapped log: lines appended to it, a long history reopened
+ * as a restarted client would, and pages of it read from random places as a user
+ * scrolling back does
+ * @author Kat Winter
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class HistoryBenchmark {
+
+	/**
+	 * A history started afresh for each iteration, so that appends do not fill the disk
+	 */
+	@State(Scope.Thread)
+	public static class Empty {
+
+		File directory;
+		HistoryStore history;
+		int i;
+
+		@Setup(Level.Iteration)
+		public void setUp() throws IOException {
+
+			directory = Files.createTempDirectory("chat-history").toFile();
+			history = new HistoryStore(directory);
+		}
+
+		@TearDown(Level.Iteration)
+		public void tearDown() {
+
+			history.close();
+			delete(directory);
+		}
+	}
+
+	/**
+	 * A history already holding a given number of lines
+	 */
+	@State(Scope.Thread)
+	public static class Filled {
+
+		@Param({ "1000000" })
+		public int lines;
+
+		@Param({ "100" })
+		public int page;
+
+		File directory;
+		HistoryStore history;
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+
+			directory = Files.createTempDirectory("chat-history").toFile();
+			history = new HistoryStore(directory);
+			for (int i = 0; i < lines; i++) {
+				history.append(line(i));
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+
+			history.close();
+			delete(directory);
+		}
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public long append(Empty empty) {
+		return empty.history.append(line(empty.i++));
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public long reopen(Filled filled) throws IOException {
+
+		HistoryStore reopened = new HistoryStore(filled.directory);
+		long size = reopened.size();
+		reopened.close();
+		return size;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<String> scrollBack(Filled filled) {
+
+		long from = ThreadLocalRandom.current().nextLong(Math.max(1, filled.history.size() - filled.page));
+		return filled.history.read(from, filled.page);
+	}
+
+	private static String line(int i) {
+		return "Them: message number " + i + " of the benchmark conversation";
+	}
+
+	private static void delete(File directory) {
+
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+}
@@ -0,0 +1,140 @@
+package distributedim;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads of one popular key from every Node of a ring, with and without replicas.
+ *
+ * In one process every Node shares the same CPUs, so reading from the owner costs the
+ * same as reading from a replica and spreading reads out gains nothing. Each Node is
+ * instead given a store that serves one read at a time and takes a set time over it,
+ * as a Node on a machine of its own has only so much to give. How many reads each Node
+ * served is printed at the end of each trial to show how the load was spread.
+ * @author Kat Winter
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+// The exported Nodes keep RMI's threads running, so let the forked JVM exit as soon as it has reported
+@Fork(value = 3, jvmArgsAppend = "-Djmh.shutdownTimeout=0")
+@State(Scope.Benchmark)
+public class HotKeyBenchmark {
+
+	@Param({ "8" })
+	public int ringSize;
+
+	@Param({ "0", "2" })
+	public int replicas;
+
+	@Param({ "200" })
+	public int serviceMicros;
+
+	private List<Node> ring;
+	private List<ServiceTimeStorage> stores;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+
+		ring = new ArrayList<Node>();
+		stores = new ArrayList<ServiceTimeStorage>();
+
+		for (int i = 0; i < ringSize; i++) {
+
+			ServiceTimeStorage store = new ServiceTimeStorage(serviceMicros * 1000L);
+			Node node = new Node("10.1." + (i >> 8) + "." + (i & 0xff), store);
+			node.setReplicationFactor(replicas);
+
+			if (i == 0) {
+				node.create();
+			}
+
+			else {
+				node.join("localhost");
+			}
+
+			ring.add(node);
+			stores.add(store);
+		}
+
+		ring.get(0).put("popular", "10.0.0.1");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+
+		long total = 0;
+		for (ServiceTimeStorage store : stores) {
+			total += store.reads.get();
+		}
+
+		StringBuilder spread = new StringBuilder("Share of reads served by each Node:");
+		for (ServiceTimeStorage store : stores) {
+			spread.append(' ').append(store.reads.get() * 100 / Math.max(1, total)).append('%');
+		}
+		System.out.println(spread);
+
+		RoutingBenchmark.leave(ring);
+	}
+
+	@Benchmark
+	@Threads(16)
+	public Object read() throws RemoteException {
+		return ring.get(ThreadLocalRandom.current().nextInt(ring.size())).get("popular");
+	}
+
+	/**
+	 * Storage that serves one read at a time and takes a set time over each, standing in
+	 * for the limited capacity of a Node on a machine of its own. Both the Node storing a
+	 * key and its replicas look in this store first.
+	 */
+	private static class ServiceTimeStorage extends SkipListStorage {
+
+		private final long nanos;
+		private final Semaphore server = new Semaphore(1, true);
+		private final AtomicLong reads = new AtomicLong();
+
+		private ServiceTimeStorage(long nanos) {
+			this.nanos = nanos;
+		}
+
+		public Object get(Identifier key) {
+
+			server.acquireUninterruptibly();
+
+			try {
+				long end = System.nanoTime() + nanos;
+				while (System.nanoTime() < end) {
+					LockSupport.parkNanos(end - System.nanoTime());
+				}
+
+				reads.incrementAndGet();
+				return super.get(key);
+			} finally {
+				server.release();
+			}
+		}
+	}
+}
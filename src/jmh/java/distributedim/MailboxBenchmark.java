@@ -0,0 +1,118 @@
+package distributedim;
+
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * An offline user's mailbox across an in-process ring: filled to capacity with messages
+ * left from every Node in turn, or emptied at once by the single request a client makes
+ * at login
+ * @author Kat Winter
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+// The exported Nodes keep RMI's threads running, so let the forked JVM exit as soon as it has reported
+@Fork(value = 3, jvmArgsAppend = "-Djmh.shutdownTimeout=0")
+public class MailboxBenchmark {
+
+	/**
+	 * The ring holding the mailbox
+	 */
+	@State(Scope.Thread)
+	public static class Ring {
+
+		@Param({ "4" })
+		public int ringSize;
+
+		@Param({ "" + Node.MAILBOX_CAPACITY })
+		public int messages;
+
+		List<Node> ring;
+		Identifier key;
+
+		@Setup(Level.Trial)
+		public void setUp() throws Exception {
+
+			ring = RoutingBenchmark.ring(ringSize);
+			key = Node.mailboxKey("away");
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			RoutingBenchmark.leave(ring);
+		}
+
+		/**
+		 * Leave the messages from every Node in turn
+		 * @return number of messages the mailbox took
+		 */
+		int leaveMessages() throws RemoteException {
+
+			int left = 0;
+			for (int i = 0; i < messages; i++) {
+				if (ring.get(i % ringSize).append(key, "sender" + i + ": message " + i)) {
+					left++;
+				}
+			}
+			return left;
+		}
+	}
+
+	/**
+	 * Filling is measured from an empty mailbox
+	 */
+	@State(Scope.Thread)
+	public static class Empty extends Ring {
+
+		@TearDown(Level.Iteration)
+		public void empty() throws RemoteException {
+			ring.get(0).drain(key);
+		}
+	}
+
+	/**
+	 * Emptying is measured from a full mailbox
+	 */
+	@State(Scope.Thread)
+	public static class Full extends Ring {
+
+		@Setup(Level.Iteration)
+		public void fill() throws RemoteException {
+
+			leaveMessages();
+
+			// Collect what filling left behind now rather than during the drain
+			System.gc();
+		}
+	}
+
+	@Benchmark
+	public int fill(Empty empty) throws RemoteException {
+		return empty.leaveMessages();
+	}
+
+	// Far quicker than filling, so run it more often to warm it up and to even out the noise
+	@Benchmark
+	@Warmup(iterations = 20)
+	@Measurement(iterations = 50)
+	public List<String> drain(Full full) throws RemoteException {
+		return full.ring.get(full.ringSize - 1).drain(full.key);
+	}
+}
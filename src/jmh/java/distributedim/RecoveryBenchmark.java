@@ -0,0 +1,69 @@
+package distributedim;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cold start of a Node's durable log: opening a LogStorage holding a given number of
+ * username/IP registrations and replaying it, as a restarted Node does
+ * @author Kat Winter
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(3)
+@State(Scope.Thread)
+public class RecoveryBenchmark {
+
+	@Param({ "100000", "1000000" })
+	public int keys;
+
+	private File file;
+	private LogStorage recovered;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+
+		file = File.createTempFile("dht-recovery", ".log");
+		file.delete();
+
+		LogStorage storage = new LogStorage(file);
+		for (int i = 0; i < keys; i++) {
+			storage.put(Hash.hashID("user" + i), "10.0." + (i >> 8 & 0xff) + "." + (i & 0xff));
+		}
+		storage.close();
+	}
+
+	@TearDown(Level.Iteration)
+	public void close() throws IOException {
+		recovered.close();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public LogStorage recover() throws IOException {
+
+		recovered = new LogStorage(file);
+		return recovered;
+	}
+}
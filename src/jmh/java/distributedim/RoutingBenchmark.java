@@ -0,0 +1,127 @@
+package distributedim;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Node.get and Node.put from random Nodes of rings of several sizes, routed recursively
+ * or iteratively. Every key is put before the first get so that each get finds its key.
+ * Each trial builds its ring in a JVM of its own.
+ * @author Kat Winter
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 1)
+// The exported Nodes keep RMI's threads running, so let the forked JVM exit as soon as it has reported
+@Fork(value = 3, jvmArgsAppend = "-Djmh.shutdownTimeout=0")
+@State(Scope.Thread)
+public class RoutingBenchmark {
+
+	@Param({ "1", "4", "16", "64" })
+	public int ringSize;
+
+	@Param({ "10000" })
+	public int keys;
+
+	@Param({ "recursive", "iterative" })
+	public String lookup;
+
+	private List<Node> ring;
+	private int i;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+
+		ring = ring(ringSize);
+		for (Node node : ring) {
+			node.setIterative(lookup.equals("iterative"));
+		}
+
+		for (int i = 0; i < keys; i++) {
+			ring.get(i % ringSize).put("user" + i, "10.0." + (i >> 8 & 0xff) + "." + (i & 0xff));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		leave(ring);
+	}
+
+	@Benchmark
+	public Object get() throws RemoteException {
+		return randomNode().get(nextKey());
+	}
+
+	@Benchmark
+	public String put() throws RemoteException {
+
+		String key = nextKey();
+		randomNode().put(key, "10.0.0.1");
+		return key;
+	}
+
+	private Node randomNode() {
+		return ring.get(ThreadLocalRandom.current().nextInt(ring.size()));
+	}
+
+	private String nextKey() {
+		return "user" + (i++ & Integer.MAX_VALUE) % keys;
+	}
+
+	/**
+	 * Build a ring of Nodes in this JVM, bootstrapped through the registry on port 1099.
+	 * JMH runs each trial in a JVM of its own, so the registry is always free.
+	 * @param nodes number of Nodes
+	 * @return the Nodes, the bootstrap first
+	 */
+	static List<Node> ring(int nodes) throws Exception {
+
+		List<Node> ring = new ArrayList<Node>();
+
+		for (int i = 0; i < nodes; i++) {
+
+			Node node = new Node("10.1." + (i >> 8) + "." + (i & 0xff));
+
+			if (i == 0) {
+				node.create();
+			}
+
+			else {
+				node.join("localhost");
+			}
+
+			ring.add(node);
+		}
+
+		return ring;
+	}
+
+	/**
+	 * Take apart a ring built by ring(), the bootstrap last
+	 */
+	static void leave(List<Node> ring) {
+
+		for (int i = ring.size() - 1; i > 0; i--) {
+			ring.get(i).leave();
+		}
+		ring.get(0).shutdown();
+	}
+}
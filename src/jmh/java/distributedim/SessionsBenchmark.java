@@ -0,0 +1,192 @@
+package distributedim;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A message sent across every one of many open chat sessions over loopback and waited
+ * for, the sessions either driven by chat engines or each with a thread blocked reading
+ * each end as Conversation used to. The threads left running are printed at the end of
+ * each trial.
+ * @author Kat Winter
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+@State(Scope.Thread)
+public class SessionsBenchmark {
+
+	@Param({ "engine", "threads" })
+	public String mode;
+
+	@Param({ "1000" })
+	public int sessions;
+
+	private Semaphore received;
+
+	private ChatEngine server;
+	private ChatEngine client;
+	private ChatSession[] engineSessions;
+
+	private ServerSocket listener;
+	private Socket[] sockets;
+	private PrintStream[] outputs;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+
+		received = new Semaphore(0);
+
+		if (mode.equals("threads")) {
+			openThreads();
+		}
+
+		else {
+			openEngine();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+
+		System.out.println(sessions + " sessions driven by " + mode + " left " + Thread.activeCount() + " threads running");
+
+		if (sockets != null) {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+			listener.close();
+		}
+
+		else {
+			client.shutdown();
+			server.shutdown();
+		}
+	}
+
+	@Benchmark
+	public int send() throws InterruptedException {
+
+		if (outputs != null) {
+			for (PrintStream output : outputs) {
+				output.println("message");
+			}
+		}
+
+		else {
+			for (ChatSession session : engineSessions) {
+				session.send("message");
+			}
+		}
+
+		received.acquire(sessions);
+		return sessions;
+	}
+
+	private void openEngine() throws IOException {
+
+		final ChatSession.Listener counter = new ChatSession.Listener() {
+			public void messageReceived(ChatSession session, String message) {
+				received.release();
+			}
+
+			public void sessionClosed(ChatSession session) {
+			}
+		};
+
+		server = new ChatEngine();
+		int port = server.listen(0, new ChatEngine.Acceptor() {
+			public void accepted(ChatSession session) {
+				session.setListener(counter);
+			}
+		});
+
+		client = new ChatEngine();
+		engineSessions = new ChatSession[sessions];
+
+		for (int i = 0; i < sessions; i++) {
+			engineSessions[i] = client.connect("127.0.0.1", port);
+			engineSessions[i].setListener(counter);
+		}
+	}
+
+	private void openThreads() throws IOException {
+
+		listener = new ServerSocket(0, 1024);
+
+		new Thread() {
+			public void run() {
+				try {
+					for (int i = 0; i < sessions; i++) {
+						final Socket socket = listener.accept();
+						new Thread() {
+							public void run() {
+								readLines(socket, received);
+							}
+						}.start();
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}.start();
+
+		sockets = new Socket[sessions];
+		outputs = new PrintStream[sessions];
+
+		for (int i = 0; i < sessions; i++) {
+			final Socket socket = new Socket("127.0.0.1", listener.getLocalPort());
+			socket.setTcpNoDelay(true);
+			sockets[i] = socket;
+			outputs[i] = new PrintStream(socket.getOutputStream());
+			new Thread() {
+				public void run() {
+					readLines(socket, null);
+				}
+			}.start();
+		}
+	}
+
+	/**
+	 * Read lines from a socket as Conversation used to, answering each with a probe
+	 */
+	private static void readLines(Socket socket, Semaphore received) {
+
+		try {
+			BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			PrintStream output = new PrintStream(socket.getOutputStream());
+			String line;
+
+			while ((line = input.readLine()) != null) {
+				if (!line.equals("TEST") && received != null) {
+					received.release();
+					output.print("TEST\n");
+				}
+			}
+		} catch (IOException e) {
+			// Session closed
+		}
+	}
+}
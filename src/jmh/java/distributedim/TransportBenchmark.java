@@ -0,0 +1,76 @@
+package distributedim;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The same DHT call made to a Node over loopback by several threads at once, through
+ * RMI and through the NIO transport
+ * @author Kat Winter
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+// The exported Node keeps the transport's threads running, so let the forked JVM exit as soon as it has reported
+@Fork(value = 3, jvmArgsAppend = "-Djmh.shutdownTimeout=0")
+@State(Scope.Benchmark)
+public class TransportBenchmark {
+
+	@Param({ "rmi", "nio" })
+	public String transport;
+
+	private Node node;
+	private iNode remote;
+	private Identifier key;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+
+		Transport calls;
+		String address;
+
+		if (transport.equals("nio")) {
+			calls = new NioTransport("127.0.0.1", NioTransport.DEFAULT_PORT);
+			address = "127.0.0.1";
+		}
+
+		else {
+			calls = new RmiTransport();
+			address = "localhost";
+		}
+
+		node = new Node("10.2.0.1", new SkipListStorage(), calls);
+		node.create();
+		node.put("alice", "10.0.0.1");
+
+		remote = calls.bootstrap(address);
+		key = Hash.hashID("alice");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		node.shutdown();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public Object get() throws RemoteException {
+		return remote.get(key);
+	}
+}
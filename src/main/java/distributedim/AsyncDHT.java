@@ -0,0 +1,207 @@
+package distributedim;
+
+import java.rmi.RemoteException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking front end to a Node in the DHT. Each operation is run on a bounded
+ * pool of threads and returns straight away with a future for its result, so callers
+ * such as the Swing event thread never wait on the Ring and can have many operations
+ * in progress at once. Once the pool and its queue are full, new operations fail
+ * straight away with a RejectedExecutionException rather than blocking the caller.
+ * @author Kat Winter
+ */
+public class AsyncDHT {
+
+	/** Default number of operations run at the same time */
+	public static final int DEFAULT_THREADS = 16;
+
+	/** Default number of operations waiting for a thread before new ones are rejected */
+	public static final int DEFAULT_QUEUE = 1024;
+
+	private iNode node;
+	private ThreadPoolExecutor executor;
+
+	/**
+	 * Constructor for a front end with the default pool and queue sizes
+	 * @param node Node to send the operations to
+	 */
+	public AsyncDHT(iNode node) {
+		this(node, DEFAULT_THREADS, DEFAULT_QUEUE);
+	}
+
+	/**
+	 * Constructor for a front end
+	 * @param node Node to send the operations to
+	 * @param threads number of operations run at the same time
+	 * @param queue number of operations that may wait for a thread
+	 */
+	public AsyncDHT(iNode node, int threads, int queue) {
+
+		this.node = node;
+
+		executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queue), new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread worker = new Thread(r, "dht-async");
+						worker.setDaemon(true);
+						return worker;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @param k Unhashed key
+	 * @return future for the data stored for the key, or null if there is none
+	 */
+	public CompletableFuture<Object> get(final String k) {
+
+		return submit(new RemoteCall<Object>() {
+			public Object call() throws RemoteException {
+				return node.get(k);
+			}
+		});
+	}
+
+	/**
+	 * @param keys Unhashed keys
+	 * @return future for the data stored for each key
+	 */
+	public CompletableFuture<Map<String, Object>> getAll(final Collection<String> keys) {
+
+		return submit(new RemoteCall<Map<String, Object>>() {
+			public Map<String, Object> call() throws RemoteException {
+				return node.getAll(keys);
+			}
+		});
+	}
+
+	/**
+	 * @param k Unhashed key
+	 * @param data Data to store for the key
+	 * @return future completed once the data is stored
+	 */
+	public CompletableFuture<Void> put(final String k, final Object data) {
+
+		return submit(new RemoteCall<Void>() {
+			public Void call() throws RemoteException {
+				node.put(k, data);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * @param k Unhashed key
+	 * @return future completed once the key is removed
+	 */
+	public CompletableFuture<Void> remove(final String k) {
+
+		return submit(new RemoteCall<Void>() {
+			public Void call() throws RemoteException {
+				node.remove(k);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * @param username Username of a user who cannot be reached
+	 * @param message Message to leave in the user's mailbox
+	 * @return future for True once the message is stored, or False if the mailbox is full
+	 */
+	public CompletableFuture<Boolean> append(final String username, final String message) {
+
+		return submit(new RemoteCall<Boolean>() {
+			public Boolean call() throws RemoteException {
+				return node.append(Node.mailboxKey(username), message);
+			}
+		});
+	}
+
+	/**
+	 * @param username Username whose mailbox is emptied
+	 * @return future for every message that was waiting, oldest first
+	 */
+	public CompletableFuture<List<String>> drain(final String username) {
+
+		return submit(new RemoteCall<List<String>>() {
+			public List<String> call() throws RemoteException {
+				return node.drain(Node.mailboxKey(username));
+			}
+		});
+	}
+
+	/**
+	 * @param key Hashed key
+	 * @param data Data to store directly at the Node, without checking it covers the key
+	 * @return future completed once the data is stored
+	 */
+	public CompletableFuture<Void> insert(final Identifier key, final Object data) {
+
+		return submit(new RemoteCall<Void>() {
+			public Void call() throws RemoteException {
+				node.insert(key, data);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * @param newNode Node to add to the Ring
+	 * @return future completed once the Node has been linked in
+	 */
+	public CompletableFuture<Void> addNodeToRing(final iNode newNode) {
+
+		return submit(new RemoteCall<Void>() {
+			public Void call() throws RemoteException {
+				node.addNodeToRing(newNode);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Stop accepting operations; those already submitted still complete
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	private <T> CompletableFuture<T> submit(final RemoteCall<T> call) {
+
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						future.complete(call.call());
+					} catch (Exception e) {
+						future.completeExceptionally(e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+
+		return future;
+	}
+
+	/**
+	 * A single blocking call to the Node
+	 */
+	private interface RemoteCall<T> {
+		T call() throws RemoteException;
+	}
+}
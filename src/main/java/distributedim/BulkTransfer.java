@@ -0,0 +1,161 @@
+package distributedim;
+
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Moves a range of keys/data from one Node to another in chunks, keeping several
+ * chunks in flight at once so that handing off a large range is limited by the
+ * amount of data moved rather than by the number of round trips.
+ * @author Kat Winter
+ */
+public class BulkTransfer {
+
+	/** Number of key/data pairs sent to the recipient in each call */
+	public static final int CHUNK_SIZE = 1024;
+
+	/** Number of chunks that may be waiting for acknowledgement at once */
+	public static final int WINDOW = 4;
+
+	private static final ExecutorService senders = Executors.newCachedThreadPool(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread sender = new Thread(r, "bulk-transfer");
+			sender.setDaemon(true);
+			return sender;
+		}
+	});
+
+	/**
+	 * Send every key/data pair in a range to the recipient. Each chunk is removed from
+	 * storage once the recipient acknowledges it, so anything that fails to transfer
+	 * is left where it was.
+	 * @param storage storage engine the range belongs to
+	 * @param range view of the keys to move
+	 * @param recipient Node to receive the data
+	 * @return number of key/data pairs moved
+	 * @throws RemoteException if the recipient could not be reached; chunks already
+	 * acknowledged have still been moved
+	 */
+	public static int send(Storage storage, SortedMap<Identifier, Object> range, iNode recipient) throws RemoteException {
+		return transfer(storage, range, recipient, false);
+	}
+
+	/**
+	 * Send a copy of every key/data pair in a range to a Node holding replicas of them.
+	 * Nothing is removed from the sender.
+	 * @param range view of the keys to copy
+	 * @param recipient Node to hold the replicas
+	 * @return number of key/data pairs copied
+	 * @throws RemoteException if the recipient could not be reached
+	 */
+	public static int replicate(SortedMap<Identifier, Object> range, iNode recipient) throws RemoteException {
+		return transfer(null, range, recipient, true);
+	}
+
+	private static int transfer(Storage storage, SortedMap<Identifier, Object> range, final iNode recipient,
+			final boolean asReplicas) throws RemoteException {
+
+		Iterator<Map.Entry<Identifier, Object>> itr = range.entrySet().iterator();
+		ArrayDeque<Future<Integer>> inFlight = new ArrayDeque<Future<Integer>>();
+		ArrayDeque<Identifier[]> inFlightKeys = new ArrayDeque<Identifier[]>();
+		ArrayDeque<Object[]> inFlightData = new ArrayDeque<Object[]>();
+		RemoteException failure = null;
+		int moved = 0;
+
+		while (itr.hasNext() || !inFlight.isEmpty()) {
+
+			// Keep the pipeline full until there is nothing left to send or something failed
+			while (failure == null && inFlight.size() < WINDOW && itr.hasNext()) {
+
+				final Identifier[] keys = new Identifier[CHUNK_SIZE];
+				final Object[] data = new Object[CHUNK_SIZE];
+				int count = 0;
+
+				while (count < CHUNK_SIZE && itr.hasNext()) {
+					Map.Entry<Identifier, Object> entry = itr.next();
+					keys[count] = entry.getKey();
+					data[count] = entry.getValue();
+					count++;
+				}
+
+				final Identifier[] chunkKeys = trim(keys, count);
+				final Object[] chunkData = trim(data, count);
+
+				inFlight.add(senders.submit(new Callable<Integer>() {
+					public Integer call() throws RemoteException {
+						return asReplicas ? recipient.storeReplicas(chunkKeys, chunkData)
+								: recipient.insertBatch(chunkKeys, chunkData);
+					}
+				}));
+				inFlightKeys.add(chunkKeys);
+				inFlightData.add(chunkData);
+			}
+
+			if (inFlight.isEmpty()) {
+				break;
+			}
+
+			Identifier[] keys = inFlightKeys.poll();
+			Object[] data = inFlightData.poll();
+
+			try {
+				int acknowledged = inFlight.poll().get();
+
+				for (int i = 0; storage != null && i < acknowledged; i++) {
+					// Only drop the key if it was not updated while the chunk was in flight
+					storage.remove(keys[i], data[i]);
+				}
+
+				moved += acknowledged;
+
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause() instanceof RemoteException ? (RemoteException) e.getCause()
+							: new RemoteException("Bulk transfer failed", e.getCause());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failure = new RemoteException("Bulk transfer interrupted", e);
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+
+		return moved;
+	}
+
+	private static Identifier[] trim(Identifier[] keys, int count) {
+
+		if (count == keys.length) {
+			return keys;
+		}
+
+		Identifier[] trimmed = new Identifier[count];
+		System.arraycopy(keys, 0, trimmed, 0, count);
+
+		return trimmed;
+	}
+
+	private static Object[] trim(Object[] data, int count) {
+
+		if (count == data.length) {
+			return data;
+		}
+
+		Object[] trimmed = new Object[count];
+		System.arraycopy(data, 0, trimmed, 0, count);
+
+		return trimmed;
+	}
+}
@@ -0,0 +1,431 @@
+package distributedim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One TCP connection to a chat partner's client, driven by a ChatEngine and carrying
+ * any number of conversations as ChatSession streams. Streams opened by the side that
+ * connected have odd numbers and those opened by the side that accepted have even
+ * numbers, so the two never pick the same one.
+ *
+ * Frames the connection cannot take straight away are appended to one buffer, so
+ * everything queued behind a busy connection goes out together in a single write.
+ *
+ * A connection that has heard nothing from the other side for the engine's idle interval
+ * sends a PING, which the other side answers with a PONG. The time taken for answers gives
+ * a smoothed round trip time and its variation, as TCP keeps them, and these set how long
+ * to wait before probing again. A connection whose probes all go unanswered is closed.
+ * @author Kat Winter
+ */
+public class ChatConnection implements ChatFrame.Handler {
+
+	/** Unanswered probes after which the other side is taken to be gone */
+	public static final int MAX_PROBES = 3;
+
+	// Bounds on how long to wait for a probe to be answered, before backing off
+	private static final long INITIAL_TIMEOUT = 3000000000L;
+	private static final long MIN_TIMEOUT = 1000000000L;
+
+	private ChatEngine engine;
+	private SocketChannel channel;
+	private SelectionKey key;
+	private String peer;
+	private int localPort;
+	private ChatFrame.Decoder decoder = new ChatFrame.Decoder();
+	private ConcurrentHashMap<Integer, ChatSession> streams = new ConcurrentHashMap<Integer, ChatSession>();
+	private int nextStream;
+	private boolean open = true;
+
+	// Frames waiting for room on the connection, ready to be appended to; null while there are none
+	private ByteBuffer unsent;
+
+	// Keepalive state, all in System.nanoTime units and only touched on the engine thread
+	private long lastReceived;
+	private long probeSentAt;
+	private int probes;
+	private long unusedSince;
+	private volatile long smoothedRtt = -1;
+	private volatile long rttVariance;
+
+	/**
+	 * @param engine engine driving the connection
+	 * @param channel the connection
+	 * @param connected True on the side that connected, False on the side that accepted
+	 * @param localPort port of the client on this side the connection belongs to, or 0 for none
+	 */
+	ChatConnection(ChatEngine engine, SocketChannel channel, boolean connected, int localPort) {
+
+		this.engine = engine;
+		this.channel = channel;
+		this.localPort = localPort;
+		nextStream = connected ? 1 : 2;
+		lastReceived = System.nanoTime();
+		unusedSince = lastReceived;
+	}
+
+	/**
+	 * @return address of the other side
+	 */
+	public String getRemoteAddress() {
+		return channel.socket().getInetAddress().getHostAddress();
+	}
+
+	/**
+	 * @return smoothed round trip time to the other side in microseconds, or -1 before any probe is answered
+	 */
+	public long getSmoothedRttMicros() {
+		return smoothedRtt < 0 ? -1 : smoothedRtt / 1000;
+	}
+
+	/**
+	 * @return smoothed variation of the round trip time in microseconds
+	 */
+	public long getRttVarianceMicros() {
+		return rttVariance / 1000;
+	}
+
+	/**
+	 * @return number of conversations the connection is carrying
+	 */
+	public int getStreamCount() {
+		return streams.size();
+	}
+
+	/**
+	 * @return True until the connection is closed
+	 */
+	public synchronized boolean isOpen() {
+		return open;
+	}
+
+	ChatEngine getEngine() {
+		return engine;
+	}
+
+	SocketChannel getChannel() {
+		return channel;
+	}
+
+	void setKey(SelectionKey key) {
+		this.key = key;
+	}
+
+	SelectionKey getKey() {
+		return key;
+	}
+
+	/**
+	 * @return "address:port" the other side accepts chats on, or null if it has not said
+	 */
+	String getPeer() {
+		return peer;
+	}
+
+	void setPeer(String peer) {
+		this.peer = peer;
+	}
+
+	/**
+	 * @return port the client on this side listens on, which its chat partners' conversations are handed to
+	 */
+	int getLocalPort() {
+		return localPort;
+	}
+
+	/**
+	 * Start a new conversation on this connection
+	 * @param localName username the other side is told started it, or null
+	 * @param group group whose messages the stream relays, or null for a conversation between two users
+	 * @return the conversation
+	 */
+	ChatSession openStream(String localName, String group) {
+
+		int stream;
+		synchronized (this) {
+			stream = nextStream;
+			nextStream += 2;
+		}
+
+		ChatSession session = new ChatSession(this, stream, null, group);
+		streams.put(stream, session);
+		engine.streamOpened();
+
+		String opener = localName == null ? "" : localName;
+		write(ChatFrame.encode(ChatFrame.OPEN, stream, group == null ? opener : opener + "\n" + group));
+
+		// The connection may have failed while the stream was being added
+		if (!isOpen() && streams.remove(stream, session)) {
+			streamClosed(session);
+		}
+
+		return session;
+	}
+
+	/**
+	 * End a conversation from this side. Called on the engine thread only.
+	 * @param session the conversation
+	 */
+	void closeStream(ChatSession session) {
+
+		if (streams.remove(session.getStream(), session)) {
+			write(ChatFrame.control(ChatFrame.CLOSE, session.getStream(), 0));
+			streamClosed(session);
+		}
+	}
+
+	/**
+	 * Tell the other side which port this side accepts chats on, so it can reuse the connection
+	 * @param port the port, or 0 if this side does not accept chats
+	 */
+	void hello(int port) {
+		write(ChatFrame.control(ChatFrame.HELLO, 0, port));
+	}
+
+	/**
+	 * Hand what the engine read to the decoder. Called on the engine thread only.
+	 * @param bytes buffer the engine read into
+	 * @param length number of bytes read
+	 * @param now System.nanoTime of the read
+	 * @throws IOException if the other side is not sending chat frames
+	 */
+	void received(byte[] bytes, int length, long now) throws IOException {
+
+		lastReceived = now;
+		decoder.decode(bytes, length, this);
+	}
+
+	public void frame(byte type, int stream, byte[] bytes, int offset, int length) {
+
+		if (type == ChatFrame.DATA) {
+
+			ChatSession session = streams.get(stream);
+
+			// Messages still arriving for a conversation closed from this side are dropped
+			if (session != null) {
+				session.received(new String(bytes, offset, length, StandardCharsets.UTF_8), length);
+			}
+		}
+
+		else if (type == ChatFrame.WINDOW) {
+
+			ChatSession session = streams.get(stream);
+
+			if (session != null) {
+				session.credit(ChatFrame.readInt(bytes, offset));
+			}
+		}
+
+		else if (type == ChatFrame.OPEN) {
+
+			String partner = new String(bytes, offset, length, StandardCharsets.UTF_8);
+			String group = null;
+
+			int newline = partner.indexOf('\n');
+			if (newline >= 0) {
+				group = partner.substring(newline + 1);
+				partner = partner.substring(0, newline);
+			}
+
+			ChatSession session = new ChatSession(this, stream, partner.isEmpty() ? null : partner, group);
+			streams.put(stream, session);
+			engine.streamOpened();
+			engine.accepted(session);
+		}
+
+		else if (type == ChatFrame.CLOSE) {
+
+			ChatSession session = streams.remove(stream);
+
+			if (session != null) {
+				streamClosed(session);
+			}
+		}
+
+		else if (type == ChatFrame.PING) {
+			write(ChatFrame.control(ChatFrame.PONG, 0, 0));
+		}
+
+		else if (type == ChatFrame.PONG && probes > 0) {
+
+			// Only time answers to the first probe, since an answer to a resent one is ambiguous
+			if (probes == 1) {
+				sample(lastReceived - probeSentAt);
+			}
+			probes = 0;
+		}
+
+		else if (type == ChatFrame.HELLO) {
+			engine.identified(this, ChatFrame.readInt(bytes, offset));
+		}
+
+		// Other frame types are left for newer versions of the protocol
+	}
+
+	/**
+	 * Probe the other side if nothing has been heard from it for a while.
+	 * Called on the engine thread only, every engine tick; a busy connection returns at the first test.
+	 * @param now System.nanoTime of the tick
+	 * @param idle idle interval in nanoseconds
+	 * @return False once the other side has failed to answer MAX_PROBES probes
+	 */
+	boolean checkIdle(long now, long idle) {
+
+		if (now - lastReceived < idle) {
+			return true;
+		}
+
+		if (probes > 0 && now - probeSentAt < probeTimeout() << (probes - 1)) {
+			return true;
+		}
+
+		if (probes >= MAX_PROBES) {
+			return false;
+		}
+
+		probes++;
+		probeSentAt = now;
+		write(ChatFrame.control(ChatFrame.PING, 0, 0));
+
+		return true;
+	}
+
+	/**
+	 * Called on the engine thread only, every engine tick
+	 * @param now System.nanoTime of the tick
+	 * @param idle idle interval in nanoseconds
+	 * @return True once the connection has carried no conversations for the idle interval
+	 */
+	boolean isUnused(long now, long idle) {
+
+		if (!streams.isEmpty()) {
+			unusedSince = now;
+			return false;
+		}
+
+		return now - unusedSince >= idle;
+	}
+
+	/**
+	 * Write whatever is queued. Called on the engine thread only.
+	 * @return True once everything queued has been written
+	 * @throws IOException if the connection has failed
+	 */
+	synchronized boolean writeUnsent() throws IOException {
+
+		if (unsent == null) {
+			return true;
+		}
+
+		unsent.flip();
+		channel.write(unsent);
+
+		if (unsent.hasRemaining()) {
+			unsent.compact();
+			return false;
+		}
+
+		unsent = null;
+		return true;
+	}
+
+	/**
+	 * Mark the connection closed and end every conversation on it, once only
+	 */
+	void closed() {
+
+		synchronized (this) {
+
+			if (!open) {
+				return;
+			}
+
+			open = false;
+			unsent = null;
+		}
+
+		for (ChatSession session : new ArrayList<ChatSession>(streams.values())) {
+			streams.remove(session.getStream());
+			streamClosed(session);
+		}
+	}
+
+	/**
+	 * Write frames straight away if nothing is queued ahead of them, queuing whatever does not fit
+	 * @param frames the frames, ready to write
+	 */
+	void write(ByteBuffer frames) {
+
+		synchronized (this) {
+
+			if (!open) {
+				return;
+			}
+
+			if (unsent == null) {
+				try {
+					channel.write(frames);
+				} catch (IOException e) {
+					engine.close(this);
+					return;
+				}
+
+				if (!frames.hasRemaining()) {
+					return;
+				}
+
+				unsent = ByteBuffer.allocate(Math.max(4096, frames.remaining()));
+			}
+
+			else if (unsent.remaining() < frames.remaining()) {
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(unsent.capacity() * 2, unsent.position() + frames.remaining()));
+				unsent.flip();
+				larger.put(unsent);
+				unsent = larger;
+			}
+
+			unsent.put(frames);
+		}
+
+		engine.startWriting(this);
+	}
+
+	private void streamClosed(ChatSession session) {
+
+		engine.streamClosed();
+		session.closed();
+	}
+
+	/**
+	 * Fold a round trip time into the smoothed estimates (RFC 6298)
+	 */
+	private void sample(long rtt) {
+
+		if (smoothedRtt < 0) {
+			smoothedRtt = rtt;
+			rttVariance = rtt / 2;
+		}
+
+		else {
+			rttVariance = (3 * rttVariance + Math.abs(smoothedRtt - rtt)) / 4;
+			smoothedRtt = (7 * smoothedRtt + rtt) / 8;
+		}
+	}
+
+	/**
+	 * @return how long to wait for the first probe to be answered
+	 */
+	private long probeTimeout() {
+
+		if (smoothedRtt < 0) {
+			return INITIAL_TIMEOUT;
+		}
+
+		return Math.max(MIN_TIMEOUT, smoothedRtt + 4 * rttVariance);
+	}
+}
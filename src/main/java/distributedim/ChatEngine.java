@@ -0,0 +1,498 @@
+package distributedim;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives every chat connection of a client from a single selector thread, instead of
+ * a thread blocked reading each conversation. There is at most one connection to each
+ * other client, whichever side opened it, and every conversation between the two is
+ * carried over it as a stream, so later chats with the same client need no new handshake
+ * or socket. A connection left with no conversations is closed after the idle interval.
+ * The selector thread also wakes up every tick to let idle connections probe the other side.
+ *
+ * An engine may listen on several ports, each with its own acceptor, so that many clients
+ * simulated in one process can share its thread. Connections are then kept per pair of
+ * clients: the local port a connection belongs to is part of how it is looked up.
+ * @author Kat Winter
+ */
+public class ChatEngine implements Runnable {
+
+	/** Port clients listen on for chat connections */
+	public static final int DEFAULT_PORT = 4444;
+
+	/** Longest a chat partner is waited for when connecting to it */
+	public static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+	/** Time without hearing from the other side after which it is probed */
+	public static final long DEFAULT_IDLE_MILLIS = 15000;
+
+	// How often idle connections are looked for
+	private static final long TICK_MILLIS = 500;
+
+	/**
+	 * Told about each conversation a chat partner starts
+	 */
+	public interface Acceptor {
+
+		/**
+		 * Called on the engine thread; the acceptor should set a listener on the
+		 * session, and messages wait for it until it does
+		 * @param session the new session
+		 */
+		void accepted(ChatSession session);
+	}
+
+	private Selector selector;
+	private ConcurrentLinkedQueue<Runnable> tasks;
+	private ByteBuffer readBuffer;
+	private ConcurrentHashMap<String, ChatConnection> connections;
+	private AtomicInteger sessions;
+	private AtomicInteger connectionCount;
+	private ConcurrentHashMap<Integer, Acceptor> acceptors;
+	private volatile int listenPort;
+	private volatile boolean running = true;
+	private long idleNanos;
+	private long lastTick;
+
+	/**
+	 * Constructor for an engine with the default idle interval, which starts its thread straight away
+	 * @throws IOException if no selector can be opened
+	 */
+	public ChatEngine() throws IOException {
+		this(DEFAULT_IDLE_MILLIS);
+	}
+
+	/**
+	 * Constructor for an engine, which starts its thread straight away
+	 * @param idleMillis time without hearing from the other side after which it is probed
+	 * @throws IOException if no selector can be opened
+	 */
+	public ChatEngine(long idleMillis) throws IOException {
+
+		idleNanos = idleMillis * 1000000;
+		lastTick = System.nanoTime();
+		selector = Selector.open();
+		tasks = new ConcurrentLinkedQueue<Runnable>();
+		readBuffer = ByteBuffer.allocate(64 * 1024);
+		connections = new ConcurrentHashMap<String, ChatConnection>();
+		acceptors = new ConcurrentHashMap<Integer, Acceptor>();
+		sessions = new AtomicInteger();
+		connectionCount = new AtomicInteger();
+
+		Thread thread = new Thread(this, "chat-engine");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Accept chat connections on a port. The first port listened on is the one
+	 * connect(host, port) tells chat partners about.
+	 * @param port port to listen on, or 0 for any free port
+	 * @param acceptor told about each conversation started by a chat partner on this port
+	 * @return port listened on
+	 * @throws IOException if the port cannot be listened on
+	 */
+	public int listen(int port, Acceptor acceptor) throws IOException {
+
+		final ServerSocketChannel listener = ServerSocketChannel.open();
+		listener.socket().setReuseAddress(true);
+		listener.bind(new InetSocketAddress(port), 1024);
+		listener.configureBlocking(false);
+
+		final int localPort = listener.socket().getLocalPort();
+		acceptors.put(localPort, acceptor);
+
+		if (listenPort == 0) {
+			listenPort = localPort;
+		}
+
+		execute(new Runnable() {
+			public void run() {
+				try {
+					listener.register(selector, SelectionKey.OP_ACCEPT, localPort);
+				} catch (IOException e) {
+					System.out.println("Unable to accept chat connections");
+				}
+			}
+		});
+
+		return localPort;
+	}
+
+	/**
+	 * Start a conversation, over the existing connection to the chat partner's client
+	 * if there is one. Set a listener on the session to start receiving from it.
+	 * @param host address of the chat partner
+	 * @param port port the chat partner listens on
+	 * @return the new session
+	 * @throws IOException if the chat partner cannot be reached
+	 */
+	public ChatSession connect(String host, int port) throws IOException {
+		return connect(host, port, listenPort, null);
+	}
+
+	/**
+	 * Start a conversation on behalf of the client listening on a given local port, over
+	 * the existing connection between that client and the chat partner's if there is one.
+	 * Set a listener on the session to start receiving from it.
+	 * @param host address of the chat partner
+	 * @param port port the chat partner listens on
+	 * @param localPort port the starting client listens on, or 0 if it does not accept chats
+	 * @param localName username the chat partner is told started the conversation, or null
+	 * @return the new session
+	 * @throws IOException if the chat partner cannot be reached
+	 */
+	public ChatSession connect(String host, int port, int localPort, String localName) throws IOException {
+		return connect(host, port, localPort, localName, null);
+	}
+
+	/**
+	 * Start a stream relaying a group's messages, or a conversation if there is no group,
+	 * on behalf of the client listening on a given local port
+	 * @param host address of the chat partner
+	 * @param port port the chat partner listens on
+	 * @param localPort port the starting client listens on, or 0 if it does not accept chats
+	 * @param localName username the chat partner is told started the stream, or null
+	 * @param group group whose messages the stream relays, or null
+	 * @return the new session
+	 * @throws IOException if the chat partner cannot be reached within CONNECT_TIMEOUT_MILLIS
+	 */
+	public ChatSession connect(String host, int port, int localPort, String localName, String group) throws IOException {
+
+		String peer = InetAddress.getByName(host).getHostAddress() + ":" + port;
+		String route = route(localPort, peer);
+		ChatConnection connection = connections.get(route);
+
+		if (connection != null && connection.isOpen()) {
+			return connection.openStream(localName, group);
+		}
+
+		// Connect without holding the lock, which the engine thread takes too, so a
+		// partner slow to answer holds up no one but the caller
+		SocketChannel channel = SocketChannel.open();
+
+		try {
+			channel.socket().connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+
+		synchronized (connections) {
+
+			connection = connections.get(route);
+
+			// Someone else connected to the same partner in the meantime
+			if (connection != null && connection.isOpen()) {
+				channel.close();
+			}
+
+			else {
+				connection = register(channel, true, localPort);
+				connection.setPeer(peer);
+				connection.hello(localPort);
+				connections.put(route, connection);
+			}
+		}
+
+		return connection.openStream(localName, group);
+	}
+
+	/**
+	 * @return number of conversations currently open
+	 */
+	public int getSessionCount() {
+		return sessions.get();
+	}
+
+	/**
+	 * @return number of connections to other clients currently open
+	 */
+	public int getConnectionCount() {
+		return connectionCount.get();
+	}
+
+	/**
+	 * Close every connection and stop the engine thread
+	 */
+	public void shutdown() {
+
+		running = false;
+		selector.wakeup();
+	}
+
+	public void run() {
+
+		while (running) {
+
+			try {
+				selector.select(TICK_MILLIS);
+			} catch (IOException e) {
+				System.out.println("Chat engine stopped: " + e.getMessage());
+				break;
+			}
+
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				task.run();
+			}
+
+			long now = System.nanoTime();
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+			while (keys.hasNext()) {
+
+				SelectionKey key = keys.next();
+				keys.remove();
+
+				if (!key.isValid()) {
+					continue;
+				}
+
+				if (key.isAcceptable()) {
+					accept(key);
+					continue;
+				}
+
+				ChatConnection connection = (ChatConnection) key.attachment();
+
+				try {
+					if (key.isReadable()) {
+						read(connection, now);
+					}
+
+					if (key.isValid() && key.isWritable() && connection.writeUnsent()) {
+						key.interestOps(SelectionKey.OP_READ);
+					}
+				} catch (IOException e) {
+					closeNow(connection);
+				}
+			}
+
+			if (now - lastTick >= TICK_MILLIS * 1000000) {
+				lastTick = now;
+				tick(now);
+			}
+		}
+
+		for (SelectionKey key : selector.keys()) {
+
+			if (key.attachment() instanceof ChatConnection) {
+				closeNow((ChatConnection) key.attachment());
+			}
+
+			else {
+				try {
+					key.channel().close();
+				} catch (IOException ignored) {
+				}
+			}
+		}
+
+		try {
+			selector.close();
+		} catch (IOException ignored) {
+		}
+	}
+
+	/**
+	 * Run a task on the engine thread
+	 */
+	void execute(Runnable task) {
+
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	/**
+	 * Write what a connection could not write straight away once it has room
+	 */
+	void startWriting(final ChatConnection connection) {
+
+		execute(new Runnable() {
+			public void run() {
+				SelectionKey key = connection.getKey();
+				if (key != null && key.isValid()) {
+					key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Close a connection from any thread
+	 */
+	void close(final ChatConnection connection) {
+
+		execute(new Runnable() {
+			public void run() {
+				closeNow(connection);
+			}
+		});
+	}
+
+	/**
+	 * A chat partner has started a conversation. Called on the engine thread only.
+	 */
+	void accepted(ChatSession session) {
+
+		Acceptor acceptor = acceptors.get(session.getConnection().getLocalPort());
+
+		if (acceptor != null) {
+			acceptor.accepted(session);
+		}
+
+		// Not accepting chats, so end it straight away
+		else {
+			session.getConnection().closeStream(session);
+		}
+	}
+
+	/**
+	 * The client at the other end of an accepted connection has said where it accepts
+	 * chats, so conversations this side starts with it can use the same connection.
+	 * Called on the engine thread only.
+	 */
+	void identified(ChatConnection connection, int port) {
+
+		if (port > 0 && connection.getPeer() == null) {
+
+			String peer = connection.getRemoteAddress() + ":" + port;
+			connection.setPeer(peer);
+
+			synchronized (connections) {
+				ChatConnection existing = connections.get(route(connection.getLocalPort(), peer));
+				if (existing == null || !existing.isOpen()) {
+					connections.put(route(connection.getLocalPort(), peer), connection);
+				}
+			}
+		}
+	}
+
+	void streamOpened() {
+		sessions.incrementAndGet();
+	}
+
+	void streamClosed() {
+		sessions.decrementAndGet();
+	}
+
+	/**
+	 * @return key of the connection between the client on a local port and a chat partner
+	 */
+	private static String route(int localPort, String peer) {
+		return localPort + ">" + peer;
+	}
+
+	private ChatConnection register(SocketChannel channel, boolean connected, int localPort) throws IOException {
+
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+
+		final ChatConnection connection = new ChatConnection(this, channel, connected, localPort);
+		connectionCount.incrementAndGet();
+
+		execute(new Runnable() {
+			public void run() {
+				try {
+					connection.setKey(connection.getChannel().register(selector, SelectionKey.OP_READ, connection));
+				} catch (IOException e) {
+					closeNow(connection);
+				}
+			}
+		});
+
+		return connection;
+	}
+
+	private void accept(SelectionKey key) {
+
+		try {
+			SocketChannel channel;
+			while ((channel = ((ServerSocketChannel) key.channel()).accept()) != null) {
+				register(channel, false, (Integer) key.attachment());
+			}
+		} catch (IOException e) {
+			System.out.println("Unable to accept a chat connection");
+		}
+	}
+
+	/**
+	 * Let every connection check whether the other side has gone quiet, and close
+	 * those that have carried no conversations for a while
+	 */
+	private void tick(long now) {
+
+		List<ChatConnection> finished = null;
+
+		for (SelectionKey key : selector.keys()) {
+
+			if (key.isValid() && key.attachment() instanceof ChatConnection) {
+
+				ChatConnection connection = (ChatConnection) key.attachment();
+
+				if (!connection.checkIdle(now, idleNanos) || connection.isUnused(now, idleNanos)) {
+					if (finished == null) {
+						finished = new ArrayList<ChatConnection>();
+					}
+					finished.add(connection);
+				}
+			}
+		}
+
+		if (finished != null) {
+			for (ChatConnection connection : finished) {
+				closeNow(connection);
+			}
+		}
+	}
+
+	private void read(ChatConnection connection, long now) throws IOException {
+
+		readBuffer.clear();
+		int read = connection.getChannel().read(readBuffer);
+
+		if (read < 0) {
+			closeNow(connection);
+			return;
+		}
+
+		connection.received(readBuffer.array(), read, now);
+	}
+
+	private void closeNow(ChatConnection connection) {
+
+		if (!connection.isOpen()) {
+			return;
+		}
+
+		if (connection.getKey() != null) {
+			connection.getKey().cancel();
+		}
+
+		try {
+			connection.getChannel().close();
+		} catch (IOException ignored) {
+		}
+
+		if (connection.getPeer() != null) {
+			connections.remove(route(connection.getLocalPort(), connection.getPeer()), connection);
+		}
+
+		connectionCount.decrementAndGet();
+		connection.closed();
+	}
+}
@@ -0,0 +1,223 @@
+package distributedim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Wire format of chat connections. Every frame is a type byte, an int stream number,
+ * an int length and that many bytes of payload, so messages may hold any text, including
+ * line breaks, and control frames can never be mistaken for a message. The stream number
+ * says which of the conversations carried by the connection a frame belongs to; frames
+ * about the connection as a whole use stream 0.
+ * @author Kat Winter
+ */
+public class ChatFrame {
+
+	/** Frame holding a message as UTF-8 text */
+	public static final byte DATA = 1;
+
+	/** Frame asking the chat partner to answer with a PONG */
+	public static final byte PING = 2;
+
+	/** Answer to a PING */
+	public static final byte PONG = 3;
+
+	/**
+	 * Frame starting a new conversation on the stream, with the UTF-8 username of whoever
+	 * started it, which may be empty, followed by a newline and a group name if the stream
+	 * relays messages of a group conversation
+	 */
+	public static final byte OPEN = 4;
+
+	/** Frame ending the conversation on the stream */
+	public static final byte CLOSE = 5;
+
+	/** Frame giving the sender on the stream permission to send as many more bytes as its int payload */
+	public static final byte WINDOW = 6;
+
+	/** First frame from the connecting side, with the int port it accepts chats on itself, or 0 */
+	public static final byte HELLO = 7;
+
+	/** Bytes of a frame before its payload */
+	public static final int HEADER = 9;
+
+	/** Largest payload accepted; anything longer means the stream is not chat frames */
+	public static final int MAX_LENGTH = 1 << 20;
+
+	/**
+	 * @param payload frame payload
+	 * @return bytes a frame takes on the wire
+	 */
+	public static int size(byte[] payload) {
+		return HEADER + payload.length;
+	}
+
+	/**
+	 * Append a frame to a buffer, which must have room for it
+	 * @param buffer buffer being filled
+	 * @param type frame type
+	 * @param stream stream number
+	 * @param payload frame payload
+	 */
+	public static void put(ByteBuffer buffer, byte type, int stream, byte[] payload) {
+
+		buffer.put(type);
+		buffer.putInt(stream);
+		buffer.putInt(payload.length);
+		buffer.put(payload);
+	}
+
+	/**
+	 * @param type frame type
+	 * @param stream stream number
+	 * @param text frame payload
+	 * @return a buffer holding the frame, ready to write
+	 */
+	public static ByteBuffer encode(byte type, int stream, String text) {
+
+		byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.allocate(size(payload));
+		put(buffer, type, stream, payload);
+		buffer.flip();
+
+		return buffer;
+	}
+
+	/**
+	 * @param type frame type
+	 * @param stream stream number
+	 * @param value frame payload
+	 * @return a buffer holding a control frame whose payload is one int, ready to write
+	 */
+	public static ByteBuffer control(byte type, int stream, int value) {
+
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER + 4);
+		buffer.put(type);
+		buffer.putInt(stream);
+		buffer.putInt(4);
+		buffer.putInt(value);
+		buffer.flip();
+
+		return buffer;
+	}
+
+	/**
+	 * @param bytes buffer holding an int payload
+	 * @param offset start of the payload
+	 * @return the int
+	 */
+	public static int readInt(byte[] bytes, int offset) {
+
+		return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+				| ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+	}
+
+	/**
+	 * Told about each complete frame
+	 */
+	public interface Handler {
+
+		/**
+		 * The payload is only valid until this returns
+		 * @param type frame type
+		 * @param stream stream number
+		 * @param bytes buffer holding the payload
+		 * @param offset start of the payload
+		 * @param length length of the payload
+		 */
+		void frame(byte type, int stream, byte[] bytes, int offset, int length);
+	}
+
+	/**
+	 * Splits a stream of bytes into frames. Frames that arrive whole are handed over
+	 * straight from the read buffer; only a frame split across reads is copied.
+	 */
+	public static class Decoder {
+
+		private byte[] partial;
+		private int partialLength;
+
+		/**
+		 * @param bytes bytes just read
+		 * @param length number of bytes read
+		 * @param handler told about each frame completed by these bytes
+		 * @throws IOException if the bytes are not chat frames
+		 */
+		public void decode(byte[] bytes, int length, Handler handler) throws IOException {
+
+			int start = 0;
+
+			// Finish the frame left over from the last read first
+			if (partialLength > 0) {
+
+				if (partialLength < HEADER) {
+					int taken = Math.min(HEADER - partialLength, length);
+					keep(bytes, 0, taken);
+					start = taken;
+
+					if (partialLength < HEADER) {
+						return;
+					}
+				}
+
+				int size = frameSize(partial, 0);
+				int taken = Math.min(size - partialLength, length - start);
+				keep(bytes, start, taken);
+				start += taken;
+
+				if (partialLength < size) {
+					return;
+				}
+
+				handler.frame(partial[0], readInt(partial, 1), partial, HEADER, size - HEADER);
+				partialLength = 0;
+
+				// Don't hold on to the room a rare large message needed
+				if (partial.length > 64 * 1024) {
+					partial = null;
+				}
+			}
+
+			while (length - start >= HEADER) {
+
+				int size = frameSize(bytes, start);
+
+				if (length - start < size) {
+					break;
+				}
+
+				handler.frame(bytes[start], readInt(bytes, start + 1), bytes, start + HEADER, size - HEADER);
+				start += size;
+			}
+
+			keep(bytes, start, length - start);
+		}
+
+		private void keep(byte[] bytes, int start, int length) {
+
+			if (length == 0) {
+				return;
+			}
+
+			if (partial == null || partial.length < partialLength + length) {
+				partial = Arrays.copyOf(partial == null ? new byte[0] : partial, Math.max(256, (partialLength + length) * 2));
+			}
+
+			System.arraycopy(bytes, start, partial, partialLength, length);
+			partialLength += length;
+		}
+
+		private static int frameSize(byte[] bytes, int start) throws IOException {
+
+			int length = readInt(bytes, start + 5);
+
+			if (length < 0 || length > MAX_LENGTH) {
+				throw new IOException("Invalid chat frame length " + length);
+			}
+
+			return HEADER + length;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package distributedim;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters of every chat session in this process, registered as the platform MBean
+ * DistributedIM:type=Chat. Message rates are the change in the counts between reads.
+ * @author Kat Winter
+ */
+public class ChatMetrics implements ChatMetricsMBean {
+
+	private static final ChatMetrics INSTANCE = register(new ChatMetrics());
+
+	final LongAdder sessionsOpened = new LongAdder();
+	final LongAdder sessionsClosed = new LongAdder();
+	final LongAdder messagesSent = new LongAdder();
+	final LongAdder bytesSent = new LongAdder();
+	final LongAdder messagesReceived = new LongAdder();
+	final LongAdder bytesReceived = new LongAdder();
+	final Histogram delivery = new Histogram();
+
+	private ChatMetrics() {
+	}
+
+	/**
+	 * @return the metrics of this process
+	 */
+	public static ChatMetrics get() {
+		return INSTANCE;
+	}
+
+	private static ChatMetrics register(ChatMetrics metrics) {
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName("DistributedIM:type=Chat"));
+		} catch (JMException e) {
+			System.out.println("Unable to register chat metrics");
+		}
+
+		return metrics;
+	}
+
+	public long getActiveSessions() {
+		return sessionsOpened.sum() - sessionsClosed.sum();
+	}
+
+	public long getSessionsOpened() {
+		return sessionsOpened.sum();
+	}
+
+	public long getSessionsClosed() {
+		return sessionsClosed.sum();
+	}
+
+	public long getMessagesSent() {
+		return messagesSent.sum();
+	}
+
+	public long getBytesSent() {
+		return bytesSent.sum();
+	}
+
+	public long getMessagesReceived() {
+		return messagesReceived.sum();
+	}
+
+	public long getBytesReceived() {
+		return bytesReceived.sum();
+	}
+
+	public long getDeliveryP50Micros() {
+		return delivery.getPercentile(0.5) / 1000;
+	}
+
+	public long getDeliveryP99Micros() {
+		return delivery.getPercentile(0.99) / 1000;
+	}
+
+	public void reset() {
+		delivery.reset();
+	}
+}
@@ -0,0 +1,38 @@
+package distributedim;
+
+/**
+ * Management interface of the chat metrics of this process. Counts are since the
+ * process started; delivery times since it started or since the last reset.
+ * @author Kat Winter
+ */
+public interface ChatMetricsMBean {
+
+	/**
+	 * @return conversations open now, including streams relaying group messages
+	 */
+	long getActiveSessions();
+
+	long getSessionsOpened();
+
+	long getSessionsClosed();
+
+	long getMessagesSent();
+
+	long getBytesSent();
+
+	long getMessagesReceived();
+
+	long getBytesReceived();
+
+	/**
+	 * @return median time a session's listener took to take a received message, from a sample of them
+	 */
+	long getDeliveryP50Micros();
+
+	long getDeliveryP99Micros();
+
+	/**
+	 * Forget the delivery times counted so far
+	 */
+	void reset();
+}
@@ -0,0 +1,326 @@
+package distributedim;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One conversation with a chat partner, carried as a stream of a ChatConnection
+ * alongside any other conversations with the same client. Received messages are handed
+ * to the session's listener on the engine thread, so a listener should hand any slow
+ * work, such as updating a window, to another thread.
+ *
+ * Each side of a stream may only have INITIAL_WINDOW bytes of messages in flight until
+ * the other side says it has handed them to its listener. Messages beyond that wait in
+ * the stream's own queue, so one busy conversation cannot fill the shared connection
+ * and hold up the others.
+ * @author Kat Winter
+ */
+public class ChatSession {
+
+	/**
+	 * Told about everything that happens to a session
+	 */
+	public interface Listener {
+
+		/**
+		 * @param session the session
+		 * @param message text from the chat partner
+		 */
+		void messageReceived(ChatSession session, String message);
+
+		/**
+		 * @param session the session, which the chat partner or this side has closed
+		 */
+		void sessionClosed(ChatSession session);
+	}
+
+	/** Bytes of messages each side of a stream may have in flight */
+	public static final int INITIAL_WINDOW = 64 * 1024;
+
+	// Deliveries timed, as one in every DELIVERY_SAMPLE, so timing costs little more than counting
+	private static final int DELIVERY_SAMPLE = 16;
+	private static final ChatMetrics metrics = ChatMetrics.get();
+
+	private ChatConnection connection;
+	private int stream;
+	private volatile String partner;
+	private String group;
+	private boolean open = true;
+
+	// Sending side, guarded by this session
+	private int sendWindow = INITIAL_WINDOW;
+	private ArrayDeque<byte[]> waiting = new ArrayDeque<byte[]>();
+
+	// Receiving side, only touched on the engine thread
+	private Listener listener;
+	private List<String> undelivered = new ArrayList<String>();
+	private int undeliveredBytes;
+	private boolean closedBeforeListener;
+	private int consumed;
+	private int delivered;
+
+	ChatSession(ChatConnection connection, int stream, String partner, String group) {
+
+		this.connection = connection;
+		this.stream = stream;
+		this.partner = partner;
+		this.group = group;
+		metrics.sessionsOpened.increment();
+	}
+
+	/**
+	 * Start handing received messages to a listener, starting with any that arrived
+	 * before it was set
+	 * @param listener the listener
+	 */
+	public void setListener(final Listener listener) {
+
+		connection.getEngine().execute(new Runnable() {
+			public void run() {
+
+				ChatSession.this.listener = listener;
+
+				if (undelivered != null) {
+
+					for (String message : undelivered) {
+						deliver(message);
+					}
+
+					undelivered = null;
+					consumed(undeliveredBytes);
+				}
+
+				if (closedBeforeListener) {
+					closedBeforeListener = false;
+					listener.sessionClosed(ChatSession.this);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return address of the chat partner
+	 */
+	public String getRemoteAddress() {
+		return connection.getRemoteAddress();
+	}
+
+	/**
+	 * @return username of the chat partner, or null if it is not known
+	 */
+	public String getPartner() {
+		return partner;
+	}
+
+	void setPartner(String partner) {
+		this.partner = partner;
+	}
+
+	/**
+	 * @return name of the group whose messages this session relays, or null for a conversation between two users
+	 */
+	public String getGroup() {
+		return group;
+	}
+
+	/**
+	 * @return connection carrying this conversation
+	 */
+	public ChatConnection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * @return smoothed round trip time to the chat partner in microseconds, or -1 before any probe is answered
+	 */
+	public long getSmoothedRttMicros() {
+		return connection.getSmoothedRttMicros();
+	}
+
+	/**
+	 * @return smoothed variation of the round trip time in microseconds
+	 */
+	public long getRttVarianceMicros() {
+		return connection.getRttVarianceMicros();
+	}
+
+	/**
+	 * @return True until the session is closed by either side
+	 */
+	public synchronized boolean isOpen() {
+		return open;
+	}
+
+	/**
+	 * Send a message to the chat partner. Returns straight away; anything the
+	 * connection cannot take yet is queued.
+	 * @param message the text, which may be of any length up to ChatFrame.MAX_LENGTH bytes
+	 */
+	public void send(String message) {
+		send(Collections.singletonList(message));
+	}
+
+	/**
+	 * Send several messages to the chat partner, in a single write as far as the window allows
+	 * @param messages the messages, in order
+	 */
+	public void send(Collection<String> messages) {
+
+		synchronized (this) {
+
+			if (!open) {
+				return;
+			}
+
+			for (String message : messages) {
+				byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+				waiting.add(payload);
+				metrics.messagesSent.increment();
+				metrics.bytesSent.add(payload.length);
+			}
+
+			sendWaiting();
+		}
+	}
+
+	/**
+	 * Close the conversation; the connection stays open for other conversations
+	 */
+	public void close() {
+
+		connection.getEngine().execute(new Runnable() {
+			public void run() {
+				connection.closeStream(ChatSession.this);
+			}
+		});
+	}
+
+	int getStream() {
+		return stream;
+	}
+
+	/**
+	 * A message has arrived. Called on the engine thread only.
+	 * @param message the message
+	 * @param length its length on the wire
+	 */
+	void received(String message, int length) {
+
+		metrics.messagesReceived.increment();
+		metrics.bytesReceived.add(length);
+
+		if (listener == null) {
+			undelivered.add(message);
+			undeliveredBytes += length;
+			return;
+		}
+
+		deliver(message);
+		consumed(length);
+	}
+
+	/**
+	 * Hand a message to the listener, timing some of the deliveries. Called on the engine thread only.
+	 */
+	private void deliver(String message) {
+
+		if (delivered++ % DELIVERY_SAMPLE != 0) {
+			listener.messageReceived(this, message);
+			return;
+		}
+
+		long start = System.nanoTime();
+		listener.messageReceived(this, message);
+		metrics.delivery.recordSince(start);
+	}
+
+	/**
+	 * The chat partner may send more. Called on the engine thread only.
+	 * @param bytes number of bytes more it may send
+	 */
+	synchronized void credit(int bytes) {
+
+		sendWindow += bytes;
+		sendWaiting();
+	}
+
+	/**
+	 * Mark the session closed and tell the listener, once only. Called on the engine thread only.
+	 */
+	void closed() {
+
+		synchronized (this) {
+
+			if (!open) {
+				return;
+			}
+
+			open = false;
+			waiting.clear();
+		}
+
+		metrics.sessionsClosed.increment();
+
+		if (listener != null) {
+			listener.sessionClosed(this);
+		}
+		else {
+			closedBeforeListener = true;
+		}
+	}
+
+	/**
+	 * Write as many waiting messages as the window allows, all in one write. A message larger
+	 * than what is left of the window still goes first in a write while any window is left,
+	 * taking the window below zero. The receiver keeps back less than half the window, so
+	 * waiting for all of it could wait forever. Called holding this session.
+	 */
+	private void sendWaiting() {
+
+		int size = 0;
+		int count = 0;
+		int window = sendWindow;
+
+		for (byte[] payload : waiting) {
+
+			if (payload.length > window && !(count == 0 && window > 0)) {
+				break;
+			}
+
+			window -= payload.length;
+			size += ChatFrame.size(payload);
+			count++;
+		}
+
+		if (count == 0) {
+			return;
+		}
+
+		ByteBuffer frames = ByteBuffer.allocate(size);
+		for (int i = 0; i < count; i++) {
+			ChatFrame.put(frames, ChatFrame.DATA, stream, waiting.poll());
+		}
+		frames.flip();
+
+		sendWindow = window;
+		connection.write(frames);
+	}
+
+	/**
+	 * Tell the chat partner it may send more once half the window has been handed to the listener
+	 */
+	private void consumed(int bytes) {
+
+		consumed += bytes;
+
+		if (consumed >= INITIAL_WINDOW / 2) {
+			connection.write(ChatFrame.control(ChatFrame.WINDOW, stream, consumed));
+			consumed = 0;
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package distributedim;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.JTabbedPane;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * One window holding every conversation as a tab. A tab gets its Conversation view
+ * only when it is first shown, so a burst of new chats costs a tab title each.
+ *
+ * Messages are added to the conversations' Transcripts on whichever thread receives
+ * them, and only mark the window as changed; a timer on the Swing event thread then
+ * brings the shown conversation up to date at most every REFRESH_MILLIS, however many
+ * messages came in meanwhile. All methods should be called on the Swing event thread
+ * apart from changed().
+ * @author Kat Winter
+ */
+public class ChatWindow {
+
+	/** Shortest time between updates of the window */
+	public static final int REFRESH_MILLIS = 100;
+
+	private JFrame frame;
+	private JTabbedPane tabs;
+	private AtomicBoolean changed;
+
+	/**
+	 * Constructor for the window, which stays hidden until the first conversation is opened
+	 */
+	public ChatWindow() {
+
+		changed = new AtomicBoolean();
+
+		frame = new JFrame();
+		frame.setBounds(100, 100, 460, 380);
+		frame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+		frame.setTitle("KAT CHAT - Conversations");
+
+		tabs = new JTabbedPane();
+		tabs.addChangeListener(new TabListener());
+		frame.getContentPane().add(tabs);
+
+		Timer timer = new Timer(REFRESH_MILLIS, new RefreshListener());
+		timer.start();
+	}
+
+	/**
+	 * Add a tab for a conversation and show the window
+	 * @param session the conversation
+	 * @param transcript lines of the conversation
+	 */
+	public void open(ChatSession session, Transcript transcript) {
+
+		String title = session.getPartner() != null ? session.getPartner() : session.getRemoteAddress();
+		tabs.addTab(title, new Placeholder(session, transcript));
+
+		if (!frame.isVisible()) {
+			frame.setVisible(true);
+		}
+	}
+
+	/**
+	 * Remove the tab of a conversation, hiding the window once there are none,
+	 * and close its transcript as nothing will show it again
+	 * @param session the conversation
+	 */
+	public void remove(ChatSession session) {
+
+		for (int i = 0; i < tabs.getTabCount(); i++) {
+
+			Object tab = tabs.getComponentAt(i);
+
+			if (tab instanceof Conversation && ((Conversation) tab).getSession() == session) {
+				tabs.removeTabAt(i);
+				((Conversation) tab).getTranscript().close();
+				break;
+			}
+
+			if (tab instanceof Placeholder && ((Placeholder) tab).session == session) {
+				tabs.removeTabAt(i);
+				((Placeholder) tab).transcript.close();
+				break;
+			}
+		}
+
+		if (tabs.getTabCount() == 0) {
+			frame.setVisible(false);
+		}
+	}
+
+	/**
+	 * Note that a transcript has new lines. May be called from any thread.
+	 */
+	public void changed() {
+		changed.set(true);
+	}
+
+	/**
+	 * Close the window and every conversation in it
+	 */
+	public void dispose() {
+		frame.dispose();
+	}
+
+	/**
+	 * Make the view of the selected tab the first time it is shown, and catch it up otherwise
+	 */
+	private void showSelected() {
+
+		int index = tabs.getSelectedIndex();
+
+		if (index < 0) {
+			return;
+		}
+
+		Object tab = tabs.getComponentAt(index);
+
+		if (tab instanceof Placeholder) {
+			Placeholder placeholder = (Placeholder) tab;
+			tabs.setComponentAt(index, new Conversation(this, placeholder.session, placeholder.transcript));
+		}
+
+		else {
+			((Conversation) tab).refresh();
+		}
+	}
+
+	/**
+	 * Stands in for a conversation's view until its tab is first shown
+	 * @author Kat Winter
+	 */
+	private static class Placeholder extends JPanel {
+
+		private static final long serialVersionUID = 1L;
+
+		private ChatSession session;
+		private Transcript transcript;
+
+		private Placeholder(ChatSession session, Transcript transcript) {
+
+			this.session = session;
+			this.transcript = transcript;
+		}
+	}
+
+	/**
+	 * Listener for changes of the selected tab
+	 * @author Kat Winter
+	 */
+	class TabListener implements ChangeListener {
+
+		public void stateChanged(ChangeEvent evt) {
+			showSelected();
+		}
+	}
+
+	/**
+	 * Listener for the refresh timer, which only does anything when a transcript has changed
+	 * @author Kat Winter
+	 */
+	class RefreshListener implements ActionListener {
+
+		public void actionPerformed(ActionEvent evt) {
+
+			if (changed.getAndSet(false)) {
+				showSelected();
+			}
+		}
+	}
+}
@@ -0,0 +1,732 @@
+package distributedim;
+
+import javax.swing.JFrame;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.*;
+import java.net.*;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.BiConsumer;
+
+import javax.swing.JButton;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+import javax.swing.JLabel;
+import javax.swing.JCheckBox;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+/**
+ * Chat application that uses a DHT for rendezvous. The messaging itself is done
+ * by a MessagingClient; this class is its Swing interface.
+ * @author Kat Winter
+ */
+public class Client {
+
+	private JFrame frame;
+	private JTextField recipientName;
+	private JTextField usernameField;
+	private JTextField bootstrapField;
+	private JCheckBox beBootstrapCheckBox;
+	private JCheckBox createNetworkCheckBox;
+	private JButton loginButton;
+	private JButton chatButton;
+	private JLabel statusLabel;
+	private ChatButtonListener chatListener;
+	private LogInListener loginListener;
+	private DisconnectListener disconnectListener;
+	private Node DHT;
+	private LogStorage logStorage;
+	private AsyncDHT asyncDHT;
+	private String myIP;
+	private String username;
+	private boolean newNetwork = false;
+	private boolean beBoot = false;
+	private volatile boolean joined = false;
+	private volatile boolean loggedIn = false;
+	private ExecutorService membership;
+	private MessagingClient messaging;
+	private ConcurrentHashMap<ChatSession, Transcript> transcripts;
+	private ConcurrentHashMap<String, HistoryStore> histories;
+	private ChatWindow chatWindow;
+
+	/**
+	 * Constructor for the client
+	 * Initializes the contents of the frame.
+	 * Creates a new Node in the DHT.
+	 */
+	public Client() {
+
+		transcripts = new ConcurrentHashMap<ChatSession, Transcript>();
+		histories = new ConcurrentHashMap<String, HistoryStore>();
+		chatWindow = new ChatWindow();
+		
+		createNode();
+		asyncDHT = new AsyncDHT(DHT);
+		
+		// Creating, joining and leaving the Ring wait on other Nodes, so they are done here
+		// rather than on the Swing thread, one at a time so a new join waits for a leave to finish
+		membership = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread worker = new Thread(r, "dht-membership");
+				worker.setDaemon(true);
+				return worker;
+			}
+		});
+		
+		try {
+			messaging = new MessagingClient(asyncDHT, myIP);
+			messaging.setListener(new ConversationListener());
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.out.println("Unable to start the chat engine");
+			System.exit(1);
+		}
+		
+		frame = new JFrame();
+		frame.setBounds(100, 100, 300, 360);
+		frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+		frame.addWindowListener(new ApplicationCloseListener());
+		frame.getContentPane().setLayout(null);
+		
+		JPanel panel = new JPanel();
+		panel.setAlignmentX(0.0f);
+		panel.setBounds(0, 0, 298, 330);
+		frame.getContentPane().add(panel);
+		panel.setLayout(null);
+		
+		chatButton = new JButton("Initiate Chat");
+		chatButton.setBounds(70, 268, 155, 25);
+		panel.add(chatButton);
+		
+		recipientName = new JTextField();
+		recipientName.setBounds(159, 235, 114, 19);
+		recipientName.setEditable(false);
+		panel.add(recipientName);
+		recipientName.setColumns(10);
+		
+		loginListener = new LogInListener();
+		disconnectListener = new DisconnectListener();
+		loginButton = new JButton("Log In");
+		loginButton.setBounds(70, 132, 155, 25);
+		loginButton.addActionListener(loginListener);
+		panel.add(loginButton);
+		
+		usernameField = new JTextField();
+		usernameField.setColumns(10);
+		usernameField.setBounds(148, 15, 138, 19);
+		panel.add(usernameField);
+		
+		JLabel usernameLabel = new JLabel("Your username:");
+		usernameLabel.setBounds(12, 12, 130, 25);
+		panel.add(usernameLabel);
+		
+		JLabel friendnameLabel = new JLabel("Friend's Username:");
+		friendnameLabel.setBounds(12, 232, 155, 25);
+		panel.add(friendnameLabel);
+		
+		JLabel bootstrapLabel = new JLabel("Bootstrap Server:");
+		bootstrapLabel.setBounds(12, 46, 155, 15);
+		panel.add(bootstrapLabel);
+		
+		bootstrapField = new JTextField();
+		bootstrapField.setBounds(158, 46, 128, 19);
+		panel.add(bootstrapField);
+		bootstrapField.setColumns(10);
+		bootstrapField.setToolTipText("Separate several bootstrap servers with commas");
+		
+		statusLabel = new JLabel("Your Status: Disconnected");
+		statusLabel.setBounds(12, 176, 261, 15);
+		panel.add(statusLabel);
+		
+		createNetworkCheckBox = new JCheckBox("Create New Network?");
+		createNetworkCheckBox.setIconTextGap(20);
+		createNetworkCheckBox.setHorizontalTextPosition(SwingConstants.LEADING);
+		createNetworkCheckBox.setBounds(8, 69, 202, 23);
+		createNetworkCheckBox.addActionListener(new NewNetworkListener());
+		panel.add(createNetworkCheckBox);
+		
+		beBootstrapCheckBox = new JCheckBox("Be a bootstrap?");
+		beBootstrapCheckBox.setIconTextGap(20);
+		beBootstrapCheckBox.setHorizontalTextPosition(SwingConstants.LEADING);
+		beBootstrapCheckBox.setBounds(8, 96, 202, 23);
+		beBootstrapCheckBox.addActionListener(new BeBootStrapListener());
+		panel.add(beBootstrapCheckBox);
+		
+		frame.setTitle("KAT CHAT");
+		frame.setVisible(true);
+	}
+	
+	/**
+	 * Gets the IP address for the client and creates a new Node object to represent
+	 * this client in the DHT.
+	 */
+	private void createNode() {
+		
+		// Open a brief socket to google.com to allow retrieval of local IP address even on Debian-based systems
+		// which otherwise return 127.0.0.1 when InetAddress.getLocalHost().getHostAddress() is called.
+		try {
+			Socket testSocket = new Socket("www.google.com", 80);
+			myIP = testSocket.getLocalAddress().getHostAddress();
+			testSocket.close();
+		} catch (UnknownHostException e1) {
+			System.out.println("Unable to reach google.com for local IP testing");
+			e1.printStackTrace();
+		} catch (IOException e1) {
+			System.out.println("Unable to open socket to google.com on port 80 for local IP testing");
+			e1.printStackTrace();
+		}
+		
+		// Keep this node's share of the DHT in a log on disk if one was asked for with -Ddht.log=<file>
+		String logFile = System.getProperty("dht.log");
+		
+		if (logFile != null) {
+			try {
+				logStorage = new LogStorage(new File(logFile));
+				DHT = new Node(myIP, logStorage);
+				return;
+			} catch (IOException e) {
+				System.out.println("Unable to open DHT log " + logFile + ", keeping DHT data in memory only");
+			}
+		}
+		
+		DHT = new Node(myIP);
+	}
+
+	/**
+	 * Gets the chat history kept with a partner, if history is being kept in a
+	 * directory asked for with -Dchat.history=<directory>
+	 * @param session Conversation with the partner
+	 * @return The partner's history, or null if none is kept. The conversation's
+	 * transcript closes it.
+	 */
+	private HistoryStore history(ChatSession session) {
+		
+		String root = System.getProperty("chat.history");
+		
+		if (root == null) {
+			return null;
+		}
+		
+		String partner = session.getPartner() != null ? session.getPartner() : session.getRemoteAddress();
+		
+		synchronized (histories) {
+			
+			HistoryStore history = histories.get(partner);
+			
+			// Each conversation with the partner holds the history until its transcript is closed
+			if (history == null || !history.retain()) {
+				try {
+					history = HistoryStore.forPartner(new File(root), partner);
+					histories.put(partner, history);
+				} catch (IOException e) {
+					history = null;
+					histories.remove(partner);
+					System.out.println("Unable to open chat history with " + partner + ", keeping recent lines only");
+				}
+			}
+			
+			return history;
+		}
+	}
+	
+	/**
+	 * Check if the username is already taken and if not,
+	 * register with the DHT by "putting" the username and IP pair into the DHT.
+	 * Chats are accepted from then on. Runs in the background; the interface is
+	 * updated once the DHT has answered.
+	 * @param username Username the client wants to use
+	 */
+	private void registerWithDHT(final String username) {
+
+		messaging.login(username).whenComplete(new BiConsumer<Boolean, Throwable>() {
+			
+			public void accept(final Boolean registered, final Throwable failure) {
+				
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						
+						if (failure instanceof IOException) {
+							JOptionPane.showMessageDialog(frame, "Unable to accept chats on this computer. Unable to log in at this time.");
+							clearLogin();
+						}
+						
+						else if (failure != null) {
+							JOptionPane.showMessageDialog(frame, "DHT failure. Unable to log in at this time.");
+							clearLogin();
+						}
+						
+						else if (!registered) {
+							JOptionPane.showMessageDialog(frame, "Username already taken.");
+							clearLogin();
+						}
+						
+						else {
+							loggedIn = true;
+						}
+					}
+				});
+			}
+		});
+	}
+	
+	/**
+	 * Close every conversation and remove the username from the DHT, waiting for the
+	 * DHT to answer so that leaving the Ring afterwards cannot lose the removal.
+	 * Called on the membership thread, never the Swing thread.
+	 */
+	private void logout() {
+		
+		try {
+			messaging.logout().join();
+		} catch (CompletionException e) {
+			System.out.println("Unable to remove " + username + " from the DHT");
+		}
+	}
+	
+	/**
+	 * Tell the user why logging in failed and reset the interface, on the Swing thread
+	 * @param message what went wrong
+	 */
+	private void loginFailed(final String message) {
+		
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				JOptionPane.showMessageDialog(frame, message);
+				clearLogin();
+			}
+		});
+	}
+	
+	/**
+	 * Clears all information in the chat interface - resets everything.
+	 */
+	private void clearLogin() {
+		
+		loginButton.setText("Log In");
+		loginButton.removeActionListener(disconnectListener);
+		loginButton.addActionListener(loginListener);
+		
+		statusLabel.setText("Your Status: Disconnected");
+		
+		usernameField.setText("");
+		username = "";
+		usernameField.setEditable(true);
+		bootstrapField.setText("");
+		bootstrapField.setEditable(true);
+		
+		createNetworkCheckBox.setEnabled(true);
+		createNetworkCheckBox.setSelected(false);
+		newNetwork = false;
+		beBootstrapCheckBox.setEnabled(true);
+		beBootstrapCheckBox.setSelected(false);
+		beBoot = false;
+		
+		recipientName.setEditable(false);
+		chatButton.removeActionListener(chatListener);
+	}
+	
+	/**
+	 * Checks that the username field holds a valid username and that
+	 * the bootstrap field is not blank (unless the box is checked
+	 * to create a new network)
+	 * @return True if there are no problems with the input fields
+	 * False if the user has not input everything correctly.
+	 */
+	private boolean validateFields() {
+		
+		if (usernameField.getText().equalsIgnoreCase("")) {
+			
+			return false;
+		}
+		
+		if (!MessagingClient.isValidUsername(usernameField.getText())) {
+			
+			JOptionPane.showMessageDialog(frame, "Usernames may not contain ':'.");
+			return false;
+		}
+		
+		if (!newNetwork) {
+			
+			if (bootstrapField.getText().equalsIgnoreCase("")) {
+				
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Listener for the Log In button. 
+	 * Attempts to create or join a DHT and then log in with the
+	 * username chosen by the user.
+	 * Updates the connection status and
+	 * the relevant checkboxes/fields so the user can now chat with someone
+	 * or receive incoming chats.
+	 * @author Kat Winter
+	 */
+	class LogInListener implements ActionListener {
+		
+		public void actionPerformed(ActionEvent evt) {
+			
+			loginButton.setText("Disconnect");
+			loginButton.removeActionListener(loginListener);
+			loginButton.addActionListener(disconnectListener);
+			statusLabel.setText("Your Status: Connected");
+
+			usernameField.setEditable(false);
+			bootstrapField.setEditable(false);
+			createNetworkCheckBox.setEnabled(false);
+			beBootstrapCheckBox.setEnabled(false);
+
+			recipientName.setEditable(true);
+			chatListener = new ChatButtonListener();
+			chatButton.addActionListener(chatListener);
+			
+			if (validateFields()) {
+
+				final boolean creating = newNetwork;
+				final boolean bootstrap = beBoot;
+				final String bootstrapIP = bootstrapField.getText();
+				username = usernameField.getText();
+				final String name = username;
+				
+				membership.execute(new Runnable() {
+					public void run() {
+						
+						if (creating) {
+
+							try {
+								
+								DHT.create();
+								
+							} catch (RemoteException e) {
+								loginFailed("Unable to create registry on port 1099. Cannot create network. Please provide a bootstrap server.");
+								return;
+							}
+						}
+
+						else {
+
+							if (bootstrap) {
+
+								try {
+									
+									DHT.beBootStrap();
+									
+								} catch (RemoteException e) {
+									SwingUtilities.invokeLater(new Runnable() {
+										public void run() {
+											JOptionPane.showMessageDialog(frame, "Unable to create registry on port 1099. Joining network as a regular node instead.");
+											beBootstrapCheckBox.setSelected(false);
+										}
+									});
+								}
+							}
+							
+							if (!joined) {
+
+								try {
+
+									DHT.join(bootstrapIP);
+									joined = true;
+
+								} catch (RemoteException e) {
+									loginFailed("Unable to join using this bootstrap server");
+									return;
+								} catch (NotBoundException e) {
+									loginFailed("The selected bootstrap server is not bound");
+									return;
+								}
+							}
+						}
+
+						registerWithDHT(name);
+					}
+				});
+			}
+			
+			else {
+				
+				JOptionPane.showMessageDialog(frame, "Invalid login parameters. Make sure you are entering a username and bootstrap IP, or username and creating a new network");
+				clearLogin();
+			}
+		}
+	}
+
+	/**
+	 * Listener for the Disconnect button which will close out all connections
+	 * and open sockets.
+	 * @author Kat Winter
+	 */
+	class DisconnectListener implements ActionListener {
+		
+		public void actionPerformed(ActionEvent evt) {
+			
+			loggedIn = false;
+			statusLabel.setText("Your Status: Disconnected");
+			clearLogin();
+			
+			membership.execute(new Runnable() {
+				public void run() {
+					
+					logout();
+					DHT.leave();
+					joined = false;
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Listener for the Chat button - checks the DHT for the provided username
+	 * in order to get the IP address for them (unless it was recently looked up). 
+	 * Then connects to that IP address to rendezvous and initiate a conversation, which
+	 * gets its tab once the ConversationListener hears about it.
+	 * @author Kat Winter
+	 */
+	class ChatButtonListener implements ActionListener {
+
+		public void actionPerformed(ActionEvent evt) {
+
+			final String recipient = recipientName.getText();
+			
+			// Look the recipient up and connect in the background so the interface stays responsive
+			messaging.openConversation(recipient).whenComplete(new BiConsumer<ChatSession, Throwable>() {
+				
+				public void accept(final ChatSession session, final Throwable failure) {
+					
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							
+							Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+							
+							if (cause instanceof IOException) {
+								cause.printStackTrace();
+								System.out.println("Error creating socket");
+								offerMailbox(recipient, "That recipient cannot be reached right now.");
+							}
+							
+							else if (cause != null) {
+								JOptionPane.showMessageDialog(frame, "DHT failure. Unable to search for recipient at this time");
+							}
+
+							else if (session == null) {
+								offerMailbox(recipient, "That recipient was not found.");
+								recipientName.setText("");
+							}
+						}
+					});
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Offer to leave a message in the mailbox of a recipient who could not be chatted with,
+	 * for them to get when they next log in
+	 * @param recipient Username of the recipient
+	 * @param reason Why the chat could not be started
+	 */
+	private void offerMailbox(final String recipient, String reason) {
+		
+		final String message = JOptionPane.showInputDialog(frame, reason + " Leave them a message?");
+		
+		if (message == null || message.isEmpty()) {
+			return;
+		}
+		
+		messaging.leaveMessage(recipient, message).whenComplete(new BiConsumer<Boolean, Throwable>() {
+			
+			public void accept(final Boolean stored, final Throwable failure) {
+				
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						
+						if (failure != null) {
+							JOptionPane.showMessageDialog(frame, "DHT failure. Unable to leave a message at this time");
+						}
+						
+						else if (!stored) {
+							JOptionPane.showMessageDialog(frame, "That recipient's mailbox is full");
+						}
+					}
+				});
+			}
+		});
+	}
+	
+	/**
+	 * Gives each conversation a Transcript, backed by the history with its partner
+	 * if one is kept, and a tab of the chat window.
+	 * Messages only go into the transcript; the chat window picks them up on its own
+	 * timer, so a flood of messages does not flood the Swing event thread.
+	 * @author Kat Winter
+	 */
+	class ConversationListener implements MessagingClient.Listener {
+		
+		public void conversationOpened(final ChatSession session, boolean incoming) {
+			
+			final Transcript transcript = new Transcript(Transcript.DEFAULT_CAPACITY, history(session));
+			transcripts.put(session, transcript);
+			
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					chatWindow.open(session, transcript);
+				}
+			});
+		}
+		
+		public void messageReceived(ChatSession session, String message) {
+			
+			Transcript transcript = transcripts.get(session);
+			if (transcript != null) {
+				transcript.add("Them: " + message);
+				chatWindow.changed();
+			}
+		}
+		
+		public void conversationClosed(ChatSession session) {
+			
+			Transcript transcript = transcripts.remove(session);
+			if (transcript != null) {
+				transcript.add("CHAT PARTNER HAS DISCONNECTED");
+				chatWindow.changed();
+			}
+		}
+		
+		public void groupMessageReceived(String group, String sender, String message) {
+			
+			// This interface does not join groups, so there is nothing to show
+		}
+		
+		public void mailReceived(final List<String> messages) {
+			
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					
+					StringBuilder text = new StringBuilder();
+					for (String message : messages) {
+						text.append(message).append('\n');
+					}
+					
+					JTextArea area = new JTextArea(text.toString(), Math.min(messages.size(), 15), 40);
+					area.setEditable(false);
+					JOptionPane.showMessageDialog(frame, new JScrollPane(area), "Messages left while you were away", JOptionPane.INFORMATION_MESSAGE);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Listener for the new network checkbox which indicates
+	 * if the user wants to create a new Ring instead of joining
+	 * an existing DHT.
+	 * @author Kat Winter
+	 */
+	class NewNetworkListener implements ActionListener {
+		
+		public void actionPerformed(ActionEvent evt) {
+			
+			if (createNetworkCheckBox.isSelected()) {
+				
+				newNetwork = true;
+				
+				bootstrapField.setText("");
+				bootstrapField.setEditable(false);
+				
+				beBootstrapCheckBox.setEnabled(false);
+			}
+			
+			else {
+				
+				newNetwork = false;
+				
+				bootstrapField.setEditable(true);
+				beBootstrapCheckBox.setEnabled(true);
+			}
+		}
+	}
+	
+	/**
+	 * Listener for the Be a Bootstrap checkbox. If selected, sets up the
+	 * client as a bootstrap in the DHT ring.
+	 * Note that once you have logged in successfully once as a bootstrap or created a new network, you will
+	 * technically remain a bootstrap until you have closed out the application.
+	 */
+	class BeBootStrapListener implements ActionListener {
+		
+		public void actionPerformed(ActionEvent evt) {
+			
+			if (beBootstrapCheckBox.isSelected()) {
+				
+				beBoot = true;
+				createNetworkCheckBox.setEnabled(false);
+			}
+			
+			else {
+				
+				beBoot = false;
+				createNetworkCheckBox.setEnabled(true);
+			}
+		}
+	}
+	
+	/**
+	 * Attempts to shut down gracefully when the application is closed
+	 * by properly removing the client information from the DHT and
+	 * having all keys/data transferred to other nodes.
+	 * Note if this is the final node in the ring, then currently this will bring up 
+	 * exceptions.
+	 * @author Kat Winter
+	 */
+	class ApplicationCloseListener extends WindowAdapter {
+		
+		public void windowClosing(WindowEvent evt) {
+			
+			final boolean leaving = loggedIn;
+			
+			chatWindow.dispose();
+			frame.dispose();
+			
+			// Leave after anything still being done with the Ring, then exit
+			membership.execute(new Runnable() {
+				public void run() {
+					
+					if (leaving) {
+						
+						logout();
+						DHT.leave();
+					}
+					
+					for (HistoryStore history : histories.values()) {
+						history.sync();
+					}
+					
+					if (logStorage != null) {
+						try {
+							logStorage.close();
+						} catch (IOException e) {
+							System.out.println("Unable to close DHT log");
+						}
+					}
+					
+					System.exit(0);
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package distributedim;
+
+import java.awt.Color;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+
+/**
+ * Class to represent a single chat conversation, as a tab of the ChatWindow.
+ * It shows the end of the conversation's Transcript and is only ever told to catch up
+ * with it, so however fast messages arrive the text area holds a bounded number of lines.
+ * Everything here runs on the Swing event thread.
+ * @author Kat Winter
+ */
+public class Conversation extends JPanel {
+
+	private static final long serialVersionUID = 1L;
+
+	// Lines fetched each time the user asks for earlier messages
+	private static final int PAGE = 100;
+
+	private ChatWindow window;
+	private ChatSession session;
+	private Transcript transcript;
+	private JTextArea incoming;
+	private JTextPane outgoing;
+	private JButton sendButton;
+	private JButton closeButton;
+	private JButton earlierButton;
+
+	// Transcript lines shown, from shownFrom up to shownTo, and the length of each in the text area
+	private long shownFrom;
+	private long shownTo;
+	private ArrayDeque<Integer> shownLengths;
+	private int limit;
+
+	/**
+	 * Cosntructor for the conversation. Sets up the GUI interface and listeners,
+	 * and shows the end of the transcript.
+	 * @param window Window the conversation is a tab of
+	 * @param session Chat connection to the other participant
+	 * @param transcript Lines of the conversation
+	 */
+	public Conversation(ChatWindow window, ChatSession session, Transcript transcript) {
+
+		this.window = window;
+		this.session = session;
+		this.transcript = transcript;
+		shownLengths = new ArrayDeque<Integer>();
+		limit = Transcript.DEFAULT_CAPACITY;
+
+		setLayout(null);
+
+		earlierButton = new JButton("Earlier messages");
+		earlierButton.setBounds(12, 0, 424, 20);
+		earlierButton.addActionListener(new EarlierListener());
+		add(earlierButton);
+
+		incoming = new JTextArea();
+		incoming.setText("");
+		incoming.setBorder(BorderFactory.createEmptyBorder(4, 4, 4, 4));
+		incoming.setEditable(false);
+
+		JScrollPane scroller = new JScrollPane(incoming);
+		scroller.setBounds(12, 24, 424, 136);
+		scroller.setBorder(BorderFactory.createLineBorder(Color.black));
+		add(scroller);
+
+		outgoing = new JTextPane();
+		outgoing.setBounds(12, 169, 424, 89);
+		outgoing.setBorder(BorderFactory.createCompoundBorder(BorderFactory.createLineBorder(Color.black), BorderFactory.createEmptyBorder(4, 4, 4, 4)));
+		add(outgoing);
+
+		sendButton = new JButton("Send");
+		sendButton.setBounds(144, 270, 150, 30);
+		sendButton.addActionListener(new SendListener());
+		add(sendButton);
+
+		closeButton = new JButton("Close");
+		closeButton.setBounds(304, 270, 132, 30);
+		closeButton.addActionListener(new CloseListener());
+		add(closeButton);
+
+		shownFrom = shownTo = transcript.getEnd();
+		refresh();
+	}
+
+	/**
+	 * @return the conversation's session
+	 */
+	public ChatSession getSession() {
+		return session;
+	}
+
+	/**
+	 * @return lines of the conversation
+	 */
+	public Transcript getTranscript() {
+		return transcript;
+	}
+
+	/**
+	 * Show whatever has been added to the transcript since the last refresh,
+	 * dropping lines from the top once more than the limit are shown
+	 */
+	public void refresh() {
+
+		List<String> lines = new ArrayList<String>();
+		long from = transcript.since(shownTo, lines);
+
+		// Lines the transcript no longer has in memory were missed while this was not refreshed
+		if (from > shownTo) {
+			clear(from);
+		}
+
+		StringBuilder text = new StringBuilder();
+		for (String line : lines) {
+			text.append(line).append('\n');
+			shownLengths.add(line.length() + 1);
+		}
+		shownTo += lines.size();
+
+		if (text.length() > 0) {
+			incoming.append(text.toString());
+		}
+
+		int excess = 0;
+		while (shownLengths.size() > limit) {
+			excess += shownLengths.poll();
+			shownFrom++;
+		}
+
+		if (excess > 0) {
+			try {
+				incoming.getDocument().remove(0, excess);
+			} catch (BadLocationException e) {
+				clear(shownTo);
+			}
+		}
+
+		earlierButton.setEnabled(shownFrom > transcript.getStart());
+		sendButton.setEnabled(session.isOpen());
+	}
+
+	/**
+	 * Empty the text area and carry on from a given line
+	 */
+	private void clear(long from) {
+
+		incoming.setText("");
+		shownLengths.clear();
+		shownFrom = shownTo = from;
+	}
+
+	/**
+	 * Listener for the earlier messages button. Shows another page of the lines
+	 * before those already shown, which stay shown until the user sends a message.
+	 * @author Kat Winter
+	 */
+	class EarlierListener implements ActionListener {
+
+		public void actionPerformed(ActionEvent evt) {
+
+			List<String> lines = transcript.earlier(shownFrom, PAGE);
+
+			StringBuilder text = new StringBuilder();
+			for (int i = lines.size() - 1; i >= 0; i--) {
+				shownLengths.addFirst(lines.get(i).length() + 1);
+			}
+			for (String line : lines) {
+				text.append(line).append('\n');
+			}
+
+			incoming.insert(text.toString(), 0);
+			incoming.setCaretPosition(0);
+			shownFrom -= lines.size();
+			limit += lines.size();
+
+			earlierButton.setEnabled(shownFrom > transcript.getStart());
+		}
+	}
+
+	/**
+	 * Listener for the close button, which ends the conversation and removes its tab
+	 * @author Kat Winter
+	 */
+	class CloseListener implements ActionListener {
+
+		public void actionPerformed(ActionEvent evt) {
+
+			session.close();
+			window.remove(session);
+		}
+	}
+
+	/**
+	 * Listener for the send button. When clicked, the text in the send box is
+	 * transmitted to the other participant as well as displayed in the display window
+	 * of this conversation.
+	 * @author Kat Winter
+	 */
+	class SendListener implements ActionListener {
+
+		public void actionPerformed(ActionEvent evt) {
+
+			String sendText = outgoing.getText();
+
+			transcript.add("You: " + sendText);
+
+			session.send(sendText);
+			outgoing.setText("");
+
+			limit = Transcript.DEFAULT_CAPACITY;
+			refresh();
+			incoming.setCaretPosition(incoming.getDocument().getLength());
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package distributedim;
+
+/**
+ * Chord-style finger table for a Node in the DHT ring.
+ * Entry i points at the first Node that follows (identifier + 2^i) on the ring,
+ * so every hop of a lookup can at least halve the remaining distance to a key.
+ * @author Kat Winter
+ */
+public class FingerTable {
+
+	/** Number of bits in a SHA-1 hash, which is also the number of fingers */
+	public static final int BITS = Identifier.BITS;
+
+	private Identifier identifier;
+	private Identifier[] starts;
+	private iNode[] nodes;
+	private Identifier[] nodeIDs;
+
+	/**
+	 * Constructor for a new finger table where every finger points at the owning Node
+	 * @param self the Node this table belongs to
+	 * @param identifier hashed IP address of the Node this table belongs to
+	 */
+	public FingerTable(iNode self, Identifier identifier) {
+
+		this.identifier = identifier;
+		starts = new Identifier[BITS];
+		nodes = new iNode[BITS];
+		nodeIDs = new Identifier[BITS];
+
+		for (int i = 0; i < BITS; i++) {
+			starts[i] = identifier.add(Identifier.powerOfTwo(i));
+			nodes[i] = self;
+			nodeIDs[i] = identifier;
+		}
+	}
+
+	/**
+	 * @param i index of the finger
+	 * @return the position on the ring that finger i is responsible for, (identifier + 2^i)
+	 */
+	public Identifier getStart(int i) {
+		return starts[i];
+	}
+
+	/**
+	 * @param i index of the finger
+	 * @return Node currently held in finger i
+	 */
+	public synchronized iNode getNode(int i) {
+		return nodes[i];
+	}
+
+	/**
+	 * @param i index of the finger
+	 * @return hashed IP address of the Node currently held in finger i
+	 */
+	public synchronized Identifier getNodeID(int i) {
+		return nodeIDs[i];
+	}
+
+	/**
+	 * Point finger i at the given Node
+	 * @param i index of the finger
+	 * @param node Node to be held in the finger
+	 * @param nodeID hashed IP address of the Node
+	 */
+	public synchronized void set(int i, iNode node, Identifier nodeID) {
+		nodes[i] = node;
+		nodeIDs[i] = nodeID;
+	}
+
+	/**
+	 * Check if the given Node would be a closer successor for the start of finger i
+	 * than the Node currently held in it
+	 * @param i index of the finger
+	 * @param nodeID hashed IP address of the candidate Node
+	 * @return True if the candidate is closer
+	 */
+	public synchronized boolean isCloser(int i, Identifier nodeID) {
+		return nodeID.isCloserThan(starts[i], nodeIDs[i]);
+	}
+
+	/**
+	 * Find the finger that most closely precedes the given key on the ring
+	 * @param key hashed key being looked up
+	 * @return the closest preceding Node as the next hop of a lookup, or null if no finger
+	 * lies between this Node and the key
+	 */
+	public synchronized Hop closestPrecedingHop(Identifier key) {
+
+		for (int i = BITS - 1; i >= 0; i--) {
+
+			if (nodeIDs[i].isBetween(identifier, key)) {
+				return new Hop(nodes[i], nodeIDs[i], false);
+			}
+		}
+
+		return null;
+	}
+}
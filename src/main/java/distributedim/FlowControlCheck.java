@@ -0,0 +1,83 @@
+package distributedim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that messages larger than what is left of a stream's send window still get
+ * through. A conversation over loopback sends some small messages, which use up part of
+ * the window without the receiver giving it back, then messages larger than the rest of
+ * it, then a small one after them. The check fails, exiting with status 1, unless every
+ * message arrives, in order, within the time allowed.
+ * Usage: java distributedim.FlowControlCheck [small messages] [small size] [large size,large size,...] [seconds]
+ * @author Kat Winter
+ */
+public class FlowControlCheck {
+
+	public static void main(String[] args) throws Exception {
+
+		int smallCount = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int smallSize = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+		String largeSizes = args.length > 2 ? args[2] : "51200,100000," + ChatFrame.MAX_LENGTH;
+		int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+		List<String> sent = new ArrayList<String>();
+		for (int i = 0; i < smallCount; i++) {
+			sent.add(text('a', smallSize));
+		}
+		for (String size : largeSizes.split(",")) {
+			sent.add(text('b', Integer.parseInt(size.trim())));
+		}
+		sent.add("after the large messages");
+
+		final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+		final Semaphore arrived = new Semaphore(0);
+
+		ChatEngine server = new ChatEngine();
+		int port = server.listen(0, new ChatEngine.Acceptor() {
+			public void accepted(ChatSession session) {
+				session.setListener(new ChatSession.Listener() {
+					public void messageReceived(ChatSession session, String message) {
+						received.add(message);
+						arrived.release();
+					}
+
+					public void sessionClosed(ChatSession session) {
+					}
+				});
+			}
+		});
+
+		ChatEngine client = new ChatEngine();
+		ChatSession session = client.connect("127.0.0.1", port);
+
+		for (String message : sent) {
+			session.send(message);
+		}
+
+		boolean all = arrived.tryAcquire(sent.size(), seconds, TimeUnit.SECONDS);
+		boolean ok = all && received.equals(sent);
+
+		System.out.println("sent " + sent.size() + " messages, sizes " + smallCount + " x " + smallSize + " then "
+				+ Arrays.toString(largeSizes.split(",")) + ", received " + received.size() + "\t" + (ok ? "ok" : "FAIL"));
+
+		client.shutdown();
+		server.shutdown();
+
+		System.exit(ok ? 0 : 1);
+	}
+
+	/**
+	 * @return a message of the given number of bytes
+	 */
+	private static String text(char c, int length) {
+
+		char[] chars = new char[length];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+}
@@ -0,0 +1,362 @@
+package distributedim;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Group conversations of one MessagingClient. A group's members are stored in the DHT
+ * under "group:" and the group's name, as a sorted list of usernames.
+ *
+ * A message is not sent to every member by its sender. Members are placed in a tree
+ * rooted at the sender, taking them in list order starting after the sender, and each
+ * member passes the message on to at most FANOUT others, so the sender sends FANOUT
+ * copies however large the group grows and a message reaches everyone within about
+ * log base FANOUT of the group size hops. A member that cannot be reached is skipped
+ * by having the member before it pass the message on to its share of the tree as well.
+ *
+ * Messages are relayed over streams of the connections between members, kept open
+ * for later messages. A sender reads the member list afresh for each message, which
+ * is one DHT lookup whatever the size of the group. Each message carries its sender
+ * and a hash of the member list the sender used, so a member whose copy of the list is
+ * out of date fetches it again before passing the message on, rather than building a
+ * different tree.
+ * @author Kat Winter
+ */
+public class GroupChat {
+
+	/** Number of members each member passes a message on to */
+	public static final int FANOUT = 4;
+
+	/** Time a member that could not be reached is skipped for before it is tried again */
+	public static final long RETRY_MILLIS = 30000;
+
+	private MessagingClient client;
+	private AsyncDHT dht;
+	private Executor executor;
+	private ConcurrentHashMap<String, Members> groups;
+	private ConcurrentHashMap<String, ChatSession> relays;
+	private ConcurrentHashMap<String, Long> unreachable;
+	private ChatSession.Listener relayListener;
+
+	// Relaying work, done one task at a time so that messages are passed on in the order they arrived
+	private ConcurrentLinkedQueue<Runnable> pending;
+	private AtomicBoolean running;
+
+	/**
+	 * @param client client whose groups these are
+	 * @param dht front end to the DHT holding the member lists
+	 * @param executor threads relaying may wait on, such as for connections to open
+	 */
+	GroupChat(MessagingClient client, AsyncDHT dht, Executor executor) {
+
+		this.client = client;
+		this.dht = dht;
+		this.executor = executor;
+		groups = new ConcurrentHashMap<String, Members>();
+		relays = new ConcurrentHashMap<String, ChatSession>();
+		unreachable = new ConcurrentHashMap<String, Long>();
+		pending = new ConcurrentLinkedQueue<Runnable>();
+		running = new AtomicBoolean();
+
+		relayListener = new ChatSession.Listener() {
+
+			public void messageReceived(ChatSession session, String message) {
+				received(session.getGroup(), message);
+			}
+
+			public void sessionClosed(ChatSession session) {
+				relays.remove(route(session.getGroup(), session.getPartner()), session);
+			}
+		};
+	}
+
+	/**
+	 * @param group name of a group
+	 * @return key its member list is stored under
+	 */
+	public static String key(String group) {
+		return "group:" + group;
+	}
+
+	/**
+	 * Add the user to a group's member list, starting the group if it has no members
+	 * @param group name of the group
+	 * @return future completing once the list is stored
+	 */
+	public CompletableFuture<Void> join(String group) {
+		return change(group, true);
+	}
+
+	/**
+	 * Take the user off a group's member list and stop relaying its messages
+	 * @param group name of the group
+	 * @return future completing once the list is stored
+	 */
+	public CompletableFuture<Void> leave(String group) {
+
+		for (String route : new ArrayList<String>(relays.keySet())) {
+			if (route.startsWith(group + "\n")) {
+				ChatSession session = relays.remove(route);
+				if (session != null) {
+					session.close();
+				}
+			}
+		}
+
+		return change(group, false);
+	}
+
+	/**
+	 * Send a message to every other member of a group. Returns straight away.
+	 * @param group name of the group
+	 * @param message the text
+	 */
+	public void send(final String group, final String message) {
+
+		final String sender = client.getUsername();
+
+		relay(new Runnable() {
+			public void run() {
+
+				Members members = fetch(group);
+				forward(group, members, sender, sender + "\n" + members.version + "\n" + message);
+			}
+		});
+	}
+
+	/**
+	 * A member has opened a stream to relay a group's messages to this client
+	 * @param session the stream
+	 */
+	void accepted(ChatSession session) {
+
+		relays.putIfAbsent(route(session.getGroup(), session.getPartner()), session);
+		session.setListener(relayListener);
+	}
+
+	/**
+	 * Hand a relayed message to the listener and pass it on down the tree.
+	 * Called on the engine thread.
+	 */
+	private void received(final String group, final String payload) {
+
+		int first = payload.indexOf('\n');
+		int second = payload.indexOf('\n', first + 1);
+
+		if (first < 0 || second < 0) {
+			return;
+		}
+
+		final String sender = payload.substring(0, first);
+		final int version;
+
+		try {
+			version = Integer.parseInt(payload.substring(first + 1, second));
+		} catch (NumberFormatException e) {
+			return;
+		}
+
+		client.groupMessageReceived(group, sender, payload.substring(second + 1));
+
+		relay(new Runnable() {
+			public void run() {
+
+				Members members = groups.get(group);
+
+				if (members == null || members.version != version) {
+					members = fetch(group);
+				}
+
+				forward(group, members, sender, payload);
+			}
+		});
+	}
+
+	/**
+	 * Send a message on to this client's children in the tree rooted at its sender
+	 */
+	private void forward(String group, Members members, String sender, String payload) {
+
+		int origin = members.list.indexOf(sender);
+		int self = members.list.indexOf(client.getUsername());
+
+		// Either has left the group since the message was sent
+		if (origin < 0 || self < 0) {
+			return;
+		}
+
+		int size = members.list.size();
+		forward(group, members.list, origin, (self - origin + size) % size, payload);
+	}
+
+	/**
+	 * @param origin position of the sender in the member list
+	 * @param position position in the tree of the member whose children are sent to
+	 */
+	private void forward(String group, List<String> list, int origin, int position, String payload) {
+
+		int size = list.size();
+
+		for (int child = position * FANOUT + 1; child <= position * FANOUT + FANOUT && child < size; child++) {
+
+			// Do the share of a member that cannot be reached
+			if (!send(group, list.get((origin + child) % size), payload)) {
+				forward(group, list, origin, child, payload);
+			}
+		}
+	}
+
+	/**
+	 * Relaying is done one task at a time, so each attempt to connect to a member that
+	 * is gone holds up every message behind it until the connection times out. A member
+	 * that could not be reached is therefore passed over for a while rather than tried
+	 * again for every message.
+	 * @return False if the member cannot be reached
+	 */
+	private boolean send(String group, String member, String payload) {
+
+		String route = route(group, member);
+		ChatSession session = relays.get(route);
+
+		if (session == null || !session.isOpen()) {
+
+			Long failed = unreachable.get(member);
+			if (failed != null && System.nanoTime() - failed < RETRY_MILLIS * 1000000) {
+				return false;
+			}
+
+			try {
+				session = client.connect(member, group);
+			} catch (IOException e) {
+				unreachable.put(member, System.nanoTime());
+				session = null;
+			}
+
+			if (session == null) {
+				return false;
+			}
+
+			unreachable.remove(member);
+
+			session.setListener(relayListener);
+			relays.put(route, session);
+		}
+
+		session.send(payload);
+		return true;
+	}
+
+	/**
+	 * Read a group's member list from the DHT, waiting for it. Called on a relaying thread.
+	 */
+	private Members fetch(String group) {
+
+		Members members;
+
+		try {
+			members = new Members(list(dht.get(key(group)).join()));
+		} catch (RuntimeException e) {
+			System.out.println("Unable to read the members of group " + group);
+			members = new Members(new ArrayList<String>());
+		}
+
+		groups.put(group, members);
+		return members;
+	}
+
+	/**
+	 * Add the user to, or take them off, a group's member list. Two members changing the
+	 * list at once may lose one of the changes, which is put right the next time either
+	 * joins or leaves.
+	 */
+	private CompletableFuture<Void> change(final String group, final boolean joining) {
+
+		final String name = client.getUsername();
+
+		return dht.get(key(group)).thenCompose(new Function<Object, CompletionStage<Void>>() {
+			public CompletionStage<Void> apply(Object stored) {
+
+				List<String> list = list(stored);
+				list.remove(name);
+
+				if (joining) {
+					list.add(name);
+					Collections.sort(list);
+					groups.put(group, new Members(list));
+				}
+
+				else {
+					groups.remove(group);
+				}
+
+				return dht.put(key(group), list);
+			}
+		});
+	}
+
+	/**
+	 * Run relaying work after any already waiting, on the executor
+	 */
+	private void relay(Runnable task) {
+
+		pending.add(task);
+		drain();
+	}
+
+	private void drain() {
+
+		if (!running.compareAndSet(false, true)) {
+			return;
+		}
+
+		executor.execute(new Runnable() {
+			public void run() {
+
+				Runnable task;
+				while ((task = pending.poll()) != null) {
+					task.run();
+				}
+
+				running.set(false);
+
+				// A task may have been added after the queue was found empty
+				if (!pending.isEmpty()) {
+					drain();
+				}
+			}
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<String> list(Object stored) {
+		return stored instanceof List ? new ArrayList<String>((List<String>) stored) : new ArrayList<String>();
+	}
+
+	private static String route(String group, String member) {
+		return group + "\n" + member;
+	}
+
+	/**
+	 * A copy of a group's member list
+	 */
+	private static class Members {
+
+		private List<String> list;
+		private int version;
+
+		private Members(List<String> list) {
+
+			this.list = list;
+			version = list.hashCode();
+		}
+	}
+}
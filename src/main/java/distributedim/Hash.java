@@ -0,0 +1,41 @@
+package distributedim;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Helper class to provide for hashing Strings with SHA-1
+ * and returning the hash as a String or as a ring Identifier
+ * @author Kat Winter
+ */
+public abstract class Hash {
+
+	// MessageDigest is not thread safe, so each thread keeps its own instead of creating one per hash
+	private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException e) {
+				System.out.println("SHA-1 not found as hashing type");
+				return null;
+			}
+		}
+	};
+
+	/**
+	 * @param toBeHashed String to hash
+	 * @return SHA-1 hash of the String as a 40 character hex String
+	 */
+	public static String hash(String toBeHashed) {
+		return hashID(toBeHashed).toString();
+	}
+
+	/**
+	 * @param toBeHashed String to hash
+	 * @return SHA-1 hash of the String as a position on the ring
+	 */
+	public static Identifier hashID(String toBeHashed) {
+		return Identifier.fromBytes(DIGEST.get().digest(toBeHashed.getBytes(StandardCharsets.UTF_8)));
+	}
+}
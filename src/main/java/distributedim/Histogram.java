@@ -0,0 +1,140 @@
+package distributedim;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values, such as latencies in nanoseconds.
+ * Values are counted in buckets eight to each power of two, so recording one is an
+ * atomic increment and percentiles are read to within an eighth of their value
+ * however large they are, from a fixed 4KB of counts.
+ * @author Kat Winter
+ */
+public class Histogram {
+
+	// Buckets per power of two, as a number of bits
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	private AtomicLongArray counts;
+	private LongAdder count;
+	private LongAdder sum;
+
+	/**
+	 * Constructor for an empty histogram
+	 */
+	public Histogram() {
+
+		counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+		count = new LongAdder();
+		sum = new LongAdder();
+	}
+
+	/**
+	 * @param value value to count, with negative values counted as 0
+	 */
+	public void record(long value) {
+
+		value = Math.max(0, value);
+		counts.incrementAndGet(bucket(value));
+		count.increment();
+		sum.add(value);
+	}
+
+	/**
+	 * Count the time since a given start
+	 * @param startNanos System.nanoTime() at the start
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * @return number of values counted
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return total of the values counted
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * @return mean of the values counted, or 0 for none
+	 */
+	public long getMean() {
+
+		long n = count.sum();
+		return n == 0 ? 0 : sum.sum() / n;
+	}
+
+	/**
+	 * @param quantile fraction of the values that should be at or below the answer, such as 0.99
+	 * @return the smallest value of the bucket holding that value, or 0 for none
+	 */
+	public long getPercentile(double quantile) {
+
+		long[] snapshot = new long[counts.length()];
+		long total = 0;
+
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return lowest(i);
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Forget every value counted so far. Values recorded meanwhile may or may not be kept.
+	 */
+	public void reset() {
+
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+
+		count.reset();
+		sum.reset();
+	}
+
+	/**
+	 * Values below SUB_BUCKETS have a bucket each; above that each power of two is split
+	 * into SUB_BUCKETS by the bits following its top bit
+	 */
+	private static int bucket(long value) {
+
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long lowest(int bucket) {
+
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+	}
+}
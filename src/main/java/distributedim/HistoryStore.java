@@ -0,0 +1,292 @@
+package distributedim;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Chat history with one chat partner, kept on disk for good as an append-only log.
+ * The log is split into segments, each a memory-mapped data file of lines and a
+ * memory-mapped index holding where each of its lines ends. Appending a line is two
+ * copies into mapped memory, and finding any line is a lookup of its segment and one
+ * index entry, so scrolling back stays quick however many lines the history holds.
+ *
+ * Segments are named after the number of their first line, so the history of a
+ * partner can be reopened, and old segments archived, without any other bookkeeping.
+ *
+ * Segments are mapped at a small size to begin with and the mappings double as lines
+ * are added, so a partner with little history takes little room.
+ *
+ * Every conversation with the partner writes to the same store. It is opened by the
+ * first and retained by each one after. Once each has closed it the store lets go of
+ * its mappings, which are released when they are garbage collected.
+ * @author Kat Winter
+ */
+public class HistoryStore implements Transcript.Store {
+
+	/** Bytes of lines each segment holds at most, unless its only line is longer */
+	public static final int SEGMENT_BYTES = 16 << 20;
+
+	/** Lines each segment holds at most */
+	public static final int SEGMENT_LINES = 1 << 20;
+
+	/** Bytes of lines a new segment is first mapped to hold */
+	public static final int INITIAL_BYTES = 64 * 1024;
+
+	/** Lines a new segment's index is first mapped to hold */
+	public static final int INITIAL_LINES = 4096;
+
+	private File directory;
+	private TreeMap<Long, Segment> segments;
+	private Segment last;
+	private long size;
+	private int holders = 1;
+
+	/**
+	 * Constructor for the history kept in a directory, which is created if needed and
+	 * otherwise carried on from
+	 * @param directory directory holding the segments
+	 * @throws IOException if the segments cannot be opened or mapped
+	 */
+	public HistoryStore(File directory) throws IOException {
+
+		this.directory = directory;
+		segments = new TreeMap<Long, Segment>();
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create history directory " + directory);
+		}
+
+		File[] files = directory.listFiles();
+		for (File file : files) {
+			if (file.getName().endsWith(".log")) {
+				long first = Long.parseLong(file.getName().substring(0, file.getName().length() - 4));
+				segments.put(first, new Segment(first));
+			}
+		}
+
+		if (segments.isEmpty()) {
+			segments.put(0L, new Segment(0));
+		}
+
+		last = segments.lastEntry().getValue();
+		size = last.first + last.lines;
+	}
+
+	/**
+	 * @param root directory holding every partner's history
+	 * @param partner username of the chat partner
+	 * @return the partner's history
+	 * @throws IOException if the history cannot be opened
+	 */
+	public static HistoryStore forPartner(File root, String partner) throws IOException {
+
+		try {
+			return new HistoryStore(new File(root, URLEncoder.encode(partner, "UTF-8")));
+		} catch (UnsupportedEncodingException unreachable) {
+			throw new IOException(unreachable);
+		}
+	}
+
+	public synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * Add a conversation to those writing to the store, which it closes when done
+	 * @return false if the store has already been closed by every conversation, and must be reopened
+	 */
+	public synchronized boolean retain() {
+
+		if (holders == 0) {
+			return false;
+		}
+
+		holders++;
+		return true;
+	}
+
+	public synchronized void close() {
+
+		if (holders == 0 || --holders > 0) {
+			return;
+		}
+
+		sync();
+
+		// Once nothing refers to the mappings the garbage collector releases them. Unmapping
+		// them here could crash a read still under way in another thread.
+		segments.clear();
+		last = null;
+	}
+
+	public synchronized long append(String line) {
+
+		if (last == null) {
+			throw new IllegalStateException("History in " + directory + " has been closed");
+		}
+
+		byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+
+		if (!last.fits(bytes.length)) {
+			try {
+				last = new Segment(size, bytes.length);
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to start a history segment in " + directory, e);
+			}
+			segments.put(last.first, last);
+		}
+
+		try {
+			last.append(bytes);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to grow a history segment in " + directory, e);
+		}
+
+		return size++;
+	}
+
+	public synchronized List<String> read(long from, int count) {
+
+		List<String> lines = new ArrayList<String>(count);
+
+		// A closed store has nothing to read from
+		long end = last == null ? 0 : Math.min(size, from + count);
+
+		for (long i = Math.max(0, from); i < end; i++) {
+			Map.Entry<Long, Segment> entry = segments.floorEntry(i);
+			lines.add(entry.getValue().line((int) (i - entry.getKey())));
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Flush everything appended so far from the page cache to disk
+	 */
+	public synchronized void sync() {
+
+		if (last == null) {
+			return;
+		}
+
+		last.data.force();
+		last.index.force();
+	}
+
+	/**
+	 * One data file and its index, mapped in full
+	 */
+	private class Segment {
+
+		private long first;
+		private int lines;
+		private File dataFile;
+		private File indexFile;
+		private MappedByteBuffer data;
+		private MappedByteBuffer index;
+
+		/**
+		 * Open the segment starting at a given line, counting the lines it already holds
+		 */
+		private Segment(long first) throws IOException {
+			this(first, 0);
+		}
+
+		/**
+		 * Open or create the segment starting at a given line, with room for a line of a given size
+		 */
+		private Segment(long first, int room) throws IOException {
+
+			this.first = first;
+			dataFile = new File(directory, String.format("%020d.log", first));
+			indexFile = new File(directory, String.format("%020d.idx", first));
+			data = map(dataFile, Math.max(INITIAL_BYTES, room));
+			index = map(indexFile, INITIAL_LINES * 4);
+
+			// Entries hold one more than the offset a line ends at, so only unwritten ones are zero
+			// and the last line can be found by bisection
+			int low = 0;
+			int high = index.capacity() / 4;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (index.getInt(middle * 4) != 0) {
+					low = middle + 1;
+				}
+				else {
+					high = middle;
+				}
+			}
+
+			lines = low;
+			data.position(end(lines - 1));
+		}
+
+		private boolean fits(int length) {
+			return lines < SEGMENT_LINES && (lines == 0 || (long) data.position() + length <= SEGMENT_BYTES);
+		}
+
+		/**
+		 * Write the line before its index entry, so the index never points at a line cut short.
+		 * Either mapping is doubled first if the line does not fit it.
+		 */
+		private void append(byte[] bytes) throws IOException {
+
+			if (data.remaining() < bytes.length) {
+				int position = data.position();
+				data = map(dataFile, (int) Math.min(Integer.MAX_VALUE, Math.max(2L * data.capacity(), (long) position + bytes.length)));
+				data.position(position);
+			}
+
+			if (lines * 4 >= index.capacity()) {
+				index = map(indexFile, Math.min(2 * index.capacity(), SEGMENT_LINES * 4));
+			}
+
+			data.put(bytes);
+			index.putInt(lines * 4, data.position() + 1);
+			lines++;
+		}
+
+		private String line(int i) {
+
+			int start = end(i - 1);
+			int end = end(i);
+
+			byte[] bytes = new byte[end - start];
+			ByteBuffer view = data.duplicate();
+			view.position(start);
+			view.get(bytes);
+
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * @return offset line i ends at, where line -1 ends at the start of the segment
+		 */
+		private int end(int i) {
+			return i < 0 ? 0 : index.getInt(i * 4) - 1;
+		}
+
+		private MappedByteBuffer map(File file, int capacity) throws IOException {
+
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+			try {
+				return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, raf.length()));
+			} finally {
+				// The mapping stays valid once the file is closed
+				raf.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package distributedim;
+
+import java.io.Serializable;
+
+/**
+ * Answer from a Node during an iterative lookup: either the Node that stores
+ * the key, or the next Node the requester should ask about it
+ * @author Kat Winter
+ */
+public class Hop implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private iNode node;
+	private Identifier nodeID;
+	private boolean owner;
+	private int hops;
+	private iNode[] replicas;
+
+	/**
+	 * Constructor for a lookup answer
+	 * @param node Node that either stores the key or should be asked next
+	 * @param nodeID hashed IP address of that Node
+	 * @param owner True if the Node stores the key
+	 */
+	public Hop(iNode node, Identifier nodeID, boolean owner) {
+
+		this.node = node;
+		this.nodeID = nodeID;
+		this.owner = owner;
+	}
+
+	/**
+	 * @return Node that either stores the key or should be asked next
+	 */
+	public iNode getNode() {
+		return node;
+	}
+
+	/**
+	 * @return hashed IP address of the Node
+	 */
+	public Identifier getNodeID() {
+		return nodeID;
+	}
+
+	/**
+	 * @return True if the Node stores the key
+	 */
+	public boolean isOwner() {
+		return owner;
+	}
+
+	/**
+	 * @return Nodes holding replicas of the key when this answer names the Node storing it,
+	 * or null if none are known
+	 */
+	public iNode[] getReplicas() {
+		return replicas;
+	}
+
+	/**
+	 * @param replicas Nodes holding replicas of the key
+	 */
+	public void setReplicas(iNode[] replicas) {
+		this.replicas = replicas;
+	}
+
+	/**
+	 * @return number of remote Nodes asked before reaching this answer
+	 */
+	public int getHops() {
+		return hops;
+	}
+
+	/**
+	 * @param hops number of remote Nodes asked before reaching this answer
+	 */
+	public void setHops(int hops) {
+		this.hops = hops;
+	}
+}
@@ -0,0 +1,204 @@
+package distributedim;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One machine's share of the Ring, taken as several virtual Nodes at positions hashed
+ * from its IP address and the number of each. A machine with a single position owns
+ * whatever arc of the keyspace its hash happens to fall at the end of, which with few
+ * machines can be many times the average; spread over many positions, its share of the
+ * keys, and of the gets and puts for them, comes out close to an even split.
+ *
+ * The virtual Nodes of a host know of each other, so a request reaching any of them
+ * jumps to whichever is closest to its key without a remote call, keys handed between
+ * them are moved directly, and when the host leaves each Node hands its keys on to a
+ * Node of another host rather than to one of its own that is leaving too.
+ * @author Kat Winter
+ */
+public class Host {
+
+	/** Virtual Nodes a host takes unless told otherwise */
+	public static final int DEFAULT_VIRTUAL_NODES = 8;
+
+	private List<Node> nodes;
+
+	/**
+	 * Constructor for a host with the default number of virtual Nodes
+	 * @param hostIP unhashed IP address of the host
+	 * @param transport transport able to export several Nodes, as RmiTransport is
+	 */
+	public Host(String hostIP, Transport transport) {
+		this(hostIP, DEFAULT_VIRTUAL_NODES, transport);
+	}
+
+	/**
+	 * Constructor for a host
+	 * @param hostIP unhashed IP address of the host
+	 * @param virtualNodes number of positions the host takes in the Ring
+	 * @param transport transport able to export several Nodes, as RmiTransport is
+	 */
+	public Host(String hostIP, int virtualNodes, Transport transport) {
+
+		nodes = new ArrayList<Node>();
+
+		for (int i = 0; i < virtualNodes; i++) {
+			nodes.add(new Node(hostIP, i, new SkipListStorage(), transport));
+		}
+
+		for (Node node : nodes) {
+
+			List<Node> siblings = new ArrayList<Node>(nodes);
+			siblings.remove(node);
+			node.setSiblings(siblings.toArray(new Node[siblings.size()]));
+		}
+	}
+
+	/**
+	 * @param replicas Number of replicas of each key kept by every virtual Node, 0 to keep a single copy
+	 */
+	public void setReplicationFactor(int replicas) {
+
+		for (Node node : nodes) {
+			node.setReplicationFactor(replicas);
+		}
+	}
+
+	/**
+	 * Create a Ring, with the first virtual Node as its bootstrap
+	 * @throws RemoteException
+	 */
+	public void create() throws RemoteException {
+
+		nodes.get(0).create();
+		joinOthers();
+	}
+
+	/**
+	 * Make the first virtual Node a bootstrap for new Nodes joining the Ring, besides any others it has
+	 * @throws RemoteException
+	 */
+	public void beBootStrap() throws RemoteException {
+		nodes.get(0).beBootStrap();
+	}
+
+	/**
+	 * Join an existing Ring
+	 * @param bootIP the IP of the existing Node acting as bootstrap, or a comma separated list of them
+	 * @throws RemoteException
+	 * @throws NotBoundException
+	 */
+	public void join(String bootIP) throws RemoteException, NotBoundException {
+
+		nodes.get(0).join(bootIP);
+		joinOthers();
+	}
+
+	/**
+	 * The Nodes after the first join through it, so only one of them asks the bootstrap,
+	 * then announce themselves to the bootstraps the first knows of
+	 */
+	private void joinOthers() throws RemoteException {
+
+		Node first = nodes.get(0);
+
+		for (int i = 1; i < nodes.size(); i++) {
+			nodes.get(i).join(first);
+			nodes.get(i).announce(first.getBootstraps());
+		}
+	}
+
+	/**
+	 * Take every virtual Node out of the Ring. A Node leaves before any other Node of this
+	 * host it would hand its keys to, so each key is moved once, to another host.
+	 */
+	public void leave() {
+
+		List<Node> remaining = new ArrayList<Node>(nodes);
+
+		while (!remaining.isEmpty()) {
+
+			Node leaving = remaining.get(0);
+
+			for (Node node : remaining) {
+				if (!isAmong(node.getHeirID(), remaining)) {
+					leaving = node;
+					break;
+				}
+			}
+
+			leaving.leave();
+			remaining.remove(leaving);
+		}
+	}
+
+	/**
+	 * Stop every virtual Node without handing its keys on, once the host is done with
+	 */
+	public void shutdown() {
+
+		for (Node node : nodes) {
+			node.shutdown();
+		}
+	}
+
+	private static boolean isAmong(Identifier id, List<Node> nodes) {
+
+		for (Node node : nodes) {
+			if (node.getID().equals(id)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @param k Unhashed key
+	 * @return the data for the key, or null if it is not in the DHT
+	 * @throws RemoteException
+	 */
+	public Object get(String k) throws RemoteException {
+		return nodes.get(0).get(k);
+	}
+
+	/**
+	 * @param k Unhashed key
+	 * @param data data to store for the key
+	 * @throws RemoteException
+	 */
+	public void put(String k, Object data) throws RemoteException {
+		nodes.get(0).put(k, data);
+	}
+
+	/**
+	 * @param k Unhashed key to remove
+	 */
+	public void remove(String k) {
+		nodes.get(0).remove(k);
+	}
+
+	/**
+	 * @return number of keys stored across the host's virtual Nodes, not counting replicas
+	 */
+	public int getKeyCount() {
+
+		int count = 0;
+
+		for (Node node : nodes) {
+			count += node.getKeyCount();
+		}
+
+		return count;
+	}
+
+	/**
+	 * @return the host's virtual Nodes, the first being the one that joins through the bootstrap
+	 */
+	public List<Node> getNodes() {
+		return Collections.unmodifiableList(nodes);
+	}
+}
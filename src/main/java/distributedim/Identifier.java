@@ -0,0 +1,283 @@
+package distributedim;
+
+import java.io.Serializable;
+
+/**
+ * 160-bit position on the DHT ring, such as the SHA-1 hash of a key or of a Node's IP address.
+ * Held as two longs and an int so that comparisons and ring arithmetic
+ * work directly on the bits instead of on a 40 character hex String.
+ * @author Kat Winter
+ */
+public final class Identifier implements Comparable<Identifier>, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Number of bytes in an identifier */
+	public static final int BYTES = 20;
+
+	/** Number of bits in an identifier, which is also the number of fingers a Node keeps */
+	public static final int BITS = BYTES * 8;
+
+	public static final Identifier ZERO = new Identifier(0L, 0L, 0);
+	public static final Identifier ONE = new Identifier(0L, 0L, 1);
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	// Most significant 64 bits, next 64 bits, least significant 32 bits
+	private final long high;
+	private final long mid;
+	private final int low;
+
+	/**
+	 * Constructor for an identifier from its raw bits
+	 * @param high most significant 64 bits
+	 * @param mid middle 64 bits
+	 * @param low least significant 32 bits
+	 */
+	public Identifier(long high, long mid, int low) {
+
+		this.high = high;
+		this.mid = mid;
+		this.low = low;
+	}
+
+	/**
+	 * @param bytes array holding a big-endian identifier
+	 * @param offset position in the array where the identifier starts
+	 * @return the identifier
+	 */
+	public static Identifier fromBytes(byte[] bytes, int offset) {
+
+		return new Identifier(readLong(bytes, offset), readLong(bytes, offset + 8),
+				(int) (readLong(bytes, offset + 12) & 0xffffffffL));
+	}
+
+	/**
+	 * @param bytes 20 byte big-endian identifier, such as a SHA-1 digest
+	 * @return the identifier
+	 */
+	public static Identifier fromBytes(byte[] bytes) {
+		return fromBytes(bytes, 0);
+	}
+
+	/**
+	 * @param hex 40 character hex String, as returned by Hash.hash
+	 * @return the identifier
+	 */
+	public static Identifier fromHex(String hex) {
+
+		byte[] bytes = new byte[BYTES];
+
+		for (int i = 0; i < BYTES; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		}
+
+		return fromBytes(bytes);
+	}
+
+	/**
+	 * @param i bit to set, 0 being the least significant
+	 * @return the identifier 2^i
+	 */
+	public static Identifier powerOfTwo(int i) {
+
+		if (i < 32) {
+			return new Identifier(0L, 0L, 1 << i);
+		}
+
+		if (i < 96) {
+			return new Identifier(0L, 1L << (i - 32), 0);
+		}
+
+		return new Identifier(1L << (i - 96), 0L, 0);
+	}
+
+	/**
+	 * Write this identifier into an array in big-endian order
+	 * @param bytes array to write to
+	 * @param offset position in the array to start writing at
+	 */
+	public void toBytes(byte[] bytes, int offset) {
+
+		writeLong(bytes, offset, high);
+		writeLong(bytes, offset + 8, mid);
+
+		for (int i = 0; i < 4; i++) {
+			bytes[offset + 16 + i] = (byte) (low >>> (24 - 8 * i));
+		}
+	}
+
+	/**
+	 * @return this identifier as a 20 byte big-endian array
+	 */
+	public byte[] toBytes() {
+
+		byte[] bytes = new byte[BYTES];
+		toBytes(bytes, 0);
+
+		return bytes;
+	}
+
+	public long getHigh() {
+		return high;
+	}
+
+	public long getMid() {
+		return mid;
+	}
+
+	public int getLow() {
+		return low;
+	}
+
+	/**
+	 * @param other identifier to add
+	 * @return this identifier moved clockwise around the ring by the other
+	 */
+	public Identifier add(Identifier other) {
+
+		long lowSum = (low & 0xffffffffL) + (other.low & 0xffffffffL);
+		long carry = lowSum >>> 32;
+
+		long midSum = mid + other.mid;
+		long midCarry = Long.compareUnsigned(midSum, mid) < 0 ? 1L : 0L;
+		midSum += carry;
+		if (carry == 1L && midSum == 0L) {
+			midCarry = 1L;
+		}
+
+		return new Identifier(high + other.high + midCarry, midSum, (int) lowSum);
+	}
+
+	/**
+	 * @param other identifier to subtract
+	 * @return this identifier moved anticlockwise around the ring by the other
+	 */
+	public Identifier subtract(Identifier other) {
+		return add(other.negate());
+	}
+
+	/**
+	 * @return the identifier that added to this one wraps around to zero
+	 */
+	public Identifier negate() {
+		return new Identifier(~high, ~mid, ~low).add(ONE);
+	}
+
+	/**
+	 * Check if this identifier lies strictly between two others, going clockwise around the ring
+	 * @param from start of the interval (exclusive)
+	 * @param to end of the interval (exclusive)
+	 * @return True if this identifier is within (from, to)
+	 */
+	public boolean isBetween(Identifier from, Identifier to) {
+
+		int cmp = from.compareTo(to);
+
+		if (cmp < 0) {
+			return compareTo(from) > 0 && compareTo(to) < 0;
+		}
+
+		// Interval wraps past zero (or covers the whole ring when from and to are the same)
+		return compareTo(from) > 0 || compareTo(to) < 0 || (cmp == 0 && !equals(from));
+	}
+
+	/**
+	 * Check if this identifier lies clockwise after one identifier, up to and including another
+	 * @param from start of the interval (exclusive)
+	 * @param to end of the interval (inclusive)
+	 * @return True if this identifier is within (from, to]
+	 */
+	public boolean isBetweenRightIncl(Identifier from, Identifier to) {
+		return equals(to) || isBetween(from, to);
+	}
+
+	/**
+	 * Compare the clockwise distances from a starting point to two identifiers
+	 * without working out either distance
+	 * @param start point to measure from
+	 * @param other identifier to compare against
+	 * @return True if this identifier is reached strictly before the other going clockwise from start
+	 */
+	public boolean isCloserThan(Identifier start, Identifier other) {
+
+		if (equals(other)) {
+			return false;
+		}
+
+		return equals(start) || isBetween(start, other);
+	}
+
+	public int compareTo(Identifier other) {
+
+		int cmp = Long.compareUnsigned(high, other.high);
+
+		if (cmp == 0) {
+			cmp = Long.compareUnsigned(mid, other.mid);
+		}
+
+		if (cmp == 0) {
+			cmp = Integer.compareUnsigned(low, other.low);
+		}
+
+		return cmp;
+	}
+
+	public boolean equals(Object o) {
+
+		if (this == o) {
+			return true;
+		}
+
+		if (!(o instanceof Identifier)) {
+			return false;
+		}
+
+		Identifier other = (Identifier) o;
+
+		return high == other.high && mid == other.mid && low == other.low;
+	}
+
+	public int hashCode() {
+
+		// SHA-1 bits are already well mixed so the low word alone spreads evenly
+		return low;
+	}
+
+	/**
+	 * @return this identifier as a 40 character hex String
+	 */
+	public String toString() {
+
+		char[] chars = new char[BYTES * 2];
+
+		for (int i = 0; i < 16; i++) {
+			chars[i] = HEX[(int) (high >>> (60 - 4 * i)) & 0xf];
+			chars[16 + i] = HEX[(int) (mid >>> (60 - 4 * i)) & 0xf];
+		}
+
+		for (int i = 0; i < 8; i++) {
+			chars[32 + i] = HEX[(low >>> (28 - 4 * i)) & 0xf];
+		}
+
+		return new String(chars);
+	}
+
+	private static long readLong(byte[] bytes, int offset) {
+
+		long value = 0L;
+
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (bytes[offset + i] & 0xffL);
+		}
+
+		return value;
+	}
+
+	private static void writeLong(byte[] bytes, int offset, long value) {
+
+		for (int i = 0; i < 8; i++) {
+			bytes[offset + i] = (byte) (value >>> (56 - 8 * i));
+		}
+	}
+}
@@ -0,0 +1,422 @@
+package distributedim;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Durable storage engine for a Node. Keys are served from an in-memory skip list
+ * while every insert, put and remove is appended to a memory-mapped log on disk.
+ * When the Node restarts the log is replayed to bring its keys back, and once
+ * most of the log is made up of overwritten or removed keys it is compacted
+ * down to a snapshot of the keys still stored.
+ * @author Kat Winter
+ */
+public class LogStorage implements Storage {
+
+	/** Size the log is first mapped at; it doubles whenever it fills up, and is cut back to what is in use when closed */
+	public static final int INITIAL_CAPACITY = 1 << 20;
+
+	/** Logs smaller than this are never compacted */
+	public static final long COMPACT_THRESHOLD = 16 << 20;
+
+	// Record types. Zero marks the end of the log since unwritten parts of the mapping are zero filled.
+	private static final byte END = 0;
+	private static final byte PUT_STRING = 1;
+	private static final byte PUT_OBJECT = 2;
+	private static final byte REMOVE = 3;
+	private static final byte CLEAR = 4;
+	private static final byte APPEND = 5;
+
+	// type byte, key, payload length
+	private static final int HEADER = 1 + Identifier.BYTES + 4;
+
+	private File file;
+	private volatile SkipListStorage entries;
+	private FileChannel channel;
+	private MappedByteBuffer log;
+	private long liveBytes;
+	private long recoveryMillis;
+
+	/**
+	 * Constructor for a storage engine backed by the given log file.
+	 * If the file already exists its keys are recovered from it.
+	 * @param file log file to append to
+	 * @throws IOException if the log cannot be opened or mapped
+	 */
+	public LogStorage(File file) throws IOException {
+
+		this.file = file;
+
+		long start = System.nanoTime();
+		open();
+		recover();
+		recoveryMillis = (System.nanoTime() - start) / 1000000;
+
+		if (entries.size() > 0) {
+			System.out.println("Recovered " + entries.size() + " keys from " + file + " in " + recoveryMillis + " ms");
+		}
+	}
+
+	/**
+	 * @return time taken to open and replay the log when this engine was created, in milliseconds
+	 */
+	public long getRecoveryMillis() {
+		return recoveryMillis;
+	}
+
+	/**
+	 * @return number of bytes of the log currently in use
+	 */
+	public synchronized long getLogSize() {
+		return log.position();
+	}
+
+	public Object get(Identifier key) {
+		return entries.get(key);
+	}
+
+	public synchronized void put(Identifier key, Object data) {
+
+		byte[] payload = encode(data);
+		append(data instanceof String ? PUT_STRING : PUT_OBJECT, key, payload);
+
+		replaced(entries.get(key));
+		entries.put(key, data);
+		liveBytes += recordSize(data);
+
+		compactIfNeeded();
+	}
+
+	public synchronized void remove(Identifier key) {
+
+		Object old = entries.get(key);
+
+		if (old != null) {
+			append(REMOVE, key, new byte[0]);
+			entries.remove(key);
+			replaced(old);
+			compactIfNeeded();
+		}
+	}
+
+	public synchronized boolean remove(Identifier key, Object data) {
+
+		if (entries.remove(key, data)) {
+			append(REMOVE, key, new byte[0]);
+			replaced(data);
+			compactIfNeeded();
+			return true;
+		}
+
+		return false;
+	}
+
+	public synchronized boolean append(Identifier key, String item, int limit) {
+
+		if (!entries.append(key, item, limit)) {
+			return false;
+		}
+
+		byte[] payload = item.getBytes(StandardCharsets.UTF_8);
+		append(APPEND, key, payload);
+		liveBytes += HEADER + payload.length;
+
+		compactIfNeeded();
+		return true;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	public synchronized void clear() {
+
+		append(CLEAR, Identifier.ZERO, new byte[0]);
+		entries.clear();
+		liveBytes = 0;
+	}
+
+	public SortedMap<Identifier, Object> upTo(Identifier key) {
+		return entries.upTo(key);
+	}
+
+	public SortedMap<Identifier, Object> after(Identifier key) {
+		return entries.after(key);
+	}
+
+	public SortedMap<Identifier, Object> all() {
+		return entries.all();
+	}
+
+	/**
+	 * Flush everything appended so far from the page cache to disk. Appends are already safe
+	 * from the Node process dying; this also makes them safe from the machine going down.
+	 */
+	public synchronized void sync() {
+		log.force();
+	}
+
+	/**
+	 * Flush the log to disk and cut the file back to the records in it, so the spare
+	 * room mapped for appends does not carry over into the next time it is opened
+	 * @throws IOException if the log cannot be truncated
+	 */
+	public synchronized void close() throws IOException {
+
+		log.force();
+		long end = log.position();
+		log = null;
+
+		channel.truncate(end);
+		channel.close();
+	}
+
+	/**
+	 * Rewrite the log so it only holds the keys currently stored. The keys in memory are
+	 * already what the new log holds, so they stay as they are while it is swapped in.
+	 * @throws IOException if the compacted log cannot be written
+	 */
+	public synchronized void compact() throws IOException {
+
+		File compacted = new File(file.getPath() + ".compact");
+		RandomAccessFile out = new RandomAccessFile(compacted, "rw");
+		FileChannel outChannel = out.getChannel();
+
+		try {
+			outChannel.truncate(0);
+			ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+			for (Map.Entry<Identifier, Object> entry : entries.all().entrySet()) {
+
+				byte[] payload = encode(entry.getValue());
+				byte type = entry.getValue() instanceof String ? PUT_STRING : PUT_OBJECT;
+
+				if (buffer.remaining() < HEADER + payload.length) {
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						outChannel.write(buffer);
+					}
+					buffer = ByteBuffer.allocate(Math.max(buffer.capacity(), HEADER + payload.length));
+				}
+
+				buffer.put(type);
+				buffer.put(entry.getKey().toBytes());
+				buffer.putInt(payload.length);
+				buffer.put(payload);
+			}
+
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				outChannel.write(buffer);
+			}
+			outChannel.force(true);
+		} finally {
+			out.close();
+		}
+
+		long end = compacted.length();
+
+		channel.close();
+		Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		open();
+		log.position((int) end);
+	}
+
+	/**
+	 * Map the log file as it stands, or at the initial capacity if it is smaller. The file
+	 * only grows when appends fill the mapping, so reopening it never makes it larger.
+	 */
+	private void open() throws IOException {
+
+		channel = new RandomAccessFile(file, "rw").getChannel();
+		log = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_CAPACITY, channel.size()));
+	}
+
+	/**
+	 * Replay the log and position it after the last complete record. The keys are
+	 * gathered into a map of their own, only taking the place of the current one once
+	 * the whole log has been read.
+	 */
+	private void recover() throws IOException {
+
+		SkipListStorage entries = new SkipListStorage();
+		liveBytes = 0;
+		log.position(0);
+		byte[] keyBytes = new byte[Identifier.BYTES];
+
+		while (log.remaining() >= HEADER) {
+
+			int start = log.position();
+			byte type = log.get();
+
+			if (type == END) {
+				log.position(start);
+				break;
+			}
+
+			log.get(keyBytes);
+			Identifier key = Identifier.fromBytes(keyBytes);
+			int length = log.getInt();
+
+			// A length running past the mapping can only come from a damaged log, so
+			// wipe the rest of it to keep later appends from running into the damage
+			if (length < 0 || length > log.remaining()) {
+				for (int i = start; i < log.capacity(); i++) {
+					log.put(i, END);
+				}
+				log.position(start);
+				break;
+			}
+
+			byte[] payload = new byte[length];
+			log.get(payload);
+
+			if (type == PUT_STRING || type == PUT_OBJECT) {
+				Object data = decode(type, payload);
+				replaced(entries.get(key));
+				entries.put(key, data);
+				liveBytes += recordSize(data);
+			}
+
+			else if (type == APPEND) {
+				entries.append(key, new String(payload, StandardCharsets.UTF_8), Integer.MAX_VALUE);
+				liveBytes += HEADER + length;
+			}
+
+			else if (type == REMOVE) {
+				replaced(entries.get(key));
+				entries.remove(key);
+			}
+
+			else if (type == CLEAR) {
+				entries.clear();
+				liveBytes = 0;
+			}
+		}
+
+		this.entries = entries;
+	}
+
+	/**
+	 * Account for a stored value that has been overwritten or removed
+	 * @param old the value, or null if there was none
+	 */
+	private void replaced(Object old) {
+
+		if (old != null) {
+			liveBytes -= recordSize(old);
+		}
+	}
+
+	/**
+	 * @param data stored value
+	 * @return approximate size of the log records holding the value, without encoding it again.
+	 * A list is counted as appended one item at a time, as it usually is.
+	 */
+	private static long recordSize(Object data) {
+
+		if (data instanceof List) {
+
+			long size = 0;
+			for (Object item : (List<?>) data) {
+				size += HEADER + String.valueOf(item).length();
+			}
+			return size;
+		}
+
+		return HEADER + (data instanceof String ? ((String) data).length() : 64);
+	}
+
+	/**
+	 * Append one record. The type byte is written last so that a record cut short
+	 * by the process dying reads back as the end of the log rather than as garbage.
+	 */
+	private void append(byte type, Identifier key, byte[] payload) {
+
+		try {
+			while (log.remaining() < HEADER + payload.length + 1) {
+				int position = log.position();
+				log = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) log.capacity() * 2);
+				log.position(position);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to grow log " + file, e);
+		}
+
+		int start = log.position();
+		log.position(start + 1);
+		log.put(key.toBytes());
+		log.putInt(payload.length);
+		log.put(payload);
+
+		int end = log.position();
+		log.put(start, type);
+		log.position(end);
+	}
+
+	/**
+	 * Compact once the log is large and at least half of it describes values that are gone
+	 */
+	private void compactIfNeeded() {
+
+		long size = log.position();
+
+		if (size > COMPACT_THRESHOLD && liveBytes < size / 2) {
+			try {
+				compact();
+			} catch (IOException e) {
+				System.out.println("Unable to compact log " + file);
+			}
+		}
+	}
+
+	private static byte[] encode(Object data) {
+
+		if (data instanceof String) {
+			return ((String) data).getBytes(StandardCharsets.UTF_8);
+		}
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(data);
+			out.close();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Data for the DHT must be Serializable", e);
+		}
+	}
+
+	private static Object decode(byte type, byte[] payload) throws IOException {
+
+		if (type == PUT_STRING) {
+			return new String(payload, StandardCharsets.UTF_8);
+		}
+
+		try {
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload));
+			return in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Log holds data of an unknown class", e);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package distributedim;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of username to IP address lookups so that repeat chats with
+ * the same person skip the trip through the DHT. Entries expire after a fixed
+ * time, and should be invalidated as soon as connecting to the cached IP fails.
+ * @author Kat Winter
+ */
+public class LookupCache {
+
+	/** Default number of usernames to remember */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/** Default time a lookup is trusted for, in milliseconds */
+	public static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000;
+
+	private LinkedHashMap<String, Entry> entries;
+	private long ttlNanos;
+	private AtomicLong hits;
+	private AtomicLong misses;
+
+	/**
+	 * Constructor for a cache with the default capacity and time to live
+	 */
+	public LookupCache() {
+		this(DEFAULT_CAPACITY, DEFAULT_TTL_MILLIS);
+	}
+
+	/**
+	 * Constructor for a cache
+	 * @param capacity number of usernames to remember; the least recently used is dropped beyond this
+	 * @param ttlMillis time a lookup is trusted for, in milliseconds
+	 */
+	public LookupCache(final int capacity, long ttlMillis) {
+
+		ttlNanos = ttlMillis * 1000000L;
+		hits = new AtomicLong();
+		misses = new AtomicLong();
+
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @param username Username to look up
+	 * @return the cached IP address, or null if it is not cached or has expired
+	 */
+	public synchronized String get(String username) {
+
+		Entry entry = entries.get(username);
+
+		if (entry == null || System.nanoTime() - entry.created > ttlNanos) {
+
+			if (entry != null) {
+				entries.remove(username);
+			}
+
+			misses.incrementAndGet();
+			return null;
+		}
+
+		hits.incrementAndGet();
+		return entry.ip;
+	}
+
+	/**
+	 * @param username Username that was looked up
+	 * @param ip IP address the DHT returned for it
+	 */
+	public synchronized void put(String username, String ip) {
+		entries.put(username, new Entry(ip));
+	}
+
+	/**
+	 * Forget a username, for example because its cached IP address could not be reached
+	 * @param username Username to forget
+	 */
+	public synchronized void invalidate(String username) {
+		entries.remove(username);
+	}
+
+	/**
+	 * @return number of lookups answered from the cache
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of lookups that had to go to the DHT
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Cached IP address and the time it was looked up
+	 */
+	private static class Entry {
+
+		private String ip;
+		private long created;
+
+		private Entry(String ip) {
+			this.ip = ip;
+			created = System.nanoTime();
+		}
+	}
+}
@@ -0,0 +1,541 @@
+package distributedim;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Messaging for one user, with no user interface: logging in to the DHT, looking up
+ * other users, opening conversations with them and being told about messages. The Swing
+ * Client is one user of this; a test can run thousands of them in one process by giving
+ * them a shared ChatEngine and AsyncDHT and a chat port of 0 each.
+ *
+ * A user is registered in the DHT under their username with the address they accept
+ * chats on, which is just their IP address when they listen on ChatEngine.DEFAULT_PORT.
+ * Messages for a user who cannot be reached are left in their mailbox in the DHT, and
+ * all of them are collected with one request when the user next logs in. Group
+ * conversations are handled by the client's GroupChat.
+ * @author Kat Winter
+ */
+public class MessagingClient {
+
+	/**
+	 * Told about everything that happens to the user's conversations. Called on the chat
+	 * engine thread, apart from conversationOpened for a conversation this side starts, which
+	 * is called on the thread that opened it. Either way it is called before any message
+	 * of the conversation is handed over.
+	 */
+	public interface Listener {
+
+		/**
+		 * @param session the new conversation
+		 * @param incoming True if the chat partner started it
+		 */
+		void conversationOpened(ChatSession session, boolean incoming);
+
+		/**
+		 * @param session the conversation
+		 * @param message text from the chat partner
+		 */
+		void messageReceived(ChatSession session, String message);
+
+		/**
+		 * @param session the conversation, which the chat partner or this side has closed
+		 */
+		void conversationClosed(ChatSession session);
+
+		/**
+		 * Called on a DHT thread once, at login, if messages were left while the user was away
+		 * @param messages each message, as "sender: text", oldest first
+		 */
+		void mailReceived(List<String> messages);
+
+		/**
+		 * Called on the chat engine thread
+		 * @param group name of the group
+		 * @param sender username of the member who sent the message
+		 * @param message the text
+		 */
+		void groupMessageReceived(String group, String sender, String message);
+	}
+
+	// Threads that open connections to chat partners, shared by every client in the process
+	private static final ThreadPoolExecutor CONNECTOR = new ThreadPoolExecutor(8, 8, 30, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread connector = new Thread(r, "chat-connect");
+					connector.setDaemon(true);
+					return connector;
+				}
+			});
+
+	static {
+		CONNECTOR.allowCoreThreadTimeOut(true);
+	}
+
+	private AsyncDHT dht;
+	private ChatEngine engine;
+	private String myIP;
+	private volatile int chatPort;
+	private volatile boolean listening;
+	private volatile String username;
+	private volatile Listener listener;
+	private LookupCache lookupCache;
+	private Set<ChatSession> conversations;
+	private ChatSession.Listener sessionListener;
+	private GroupChat groups;
+
+	/**
+	 * Constructor for a client with a chat engine of its own, accepting chats on the default port
+	 * @param dht front end to the DHT the user registers in
+	 * @param myIP address other users reach this client at
+	 * @throws IOException if the chat engine cannot be started
+	 */
+	public MessagingClient(AsyncDHT dht, String myIP) throws IOException {
+		this(dht, new ChatEngine(), myIP, ChatEngine.DEFAULT_PORT);
+	}
+
+	/**
+	 * Constructor for a client
+	 * @param dht front end to the DHT the user registers in, which may be shared with other clients
+	 * @param engine engine driving the conversations, which may be shared with other clients
+	 * @param myIP address other users reach this client at
+	 * @param chatPort port to accept chats on, or 0 for any free port
+	 */
+	public MessagingClient(AsyncDHT dht, ChatEngine engine, String myIP, int chatPort) {
+
+		this.dht = dht;
+		this.engine = engine;
+		this.myIP = myIP;
+		this.chatPort = chatPort;
+		lookupCache = new LookupCache();
+		conversations = Collections.newSetFromMap(new ConcurrentHashMap<ChatSession, Boolean>());
+		groups = new GroupChat(this, dht, CONNECTOR);
+
+		sessionListener = new ChatSession.Listener() {
+
+			public void messageReceived(ChatSession session, String message) {
+
+				Listener current = listener;
+				if (current != null) {
+					current.messageReceived(session, message);
+				}
+			}
+
+			public void sessionClosed(ChatSession session) {
+
+				conversations.remove(session);
+
+				Listener current = listener;
+				if (current != null) {
+					current.conversationClosed(session);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @param listener told about conversations from now on
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @return the username logged in with, or null if not logged in
+	 */
+	public String getUsername() {
+		return username;
+	}
+
+	/**
+	 * @return address chat partners are given for this client
+	 */
+	public String getAddress() {
+		return address(myIP, chatPort);
+	}
+
+	/**
+	 * @return the conversations currently open
+	 */
+	public List<ChatSession> getConversations() {
+		return new ArrayList<ChatSession>(conversations);
+	}
+
+	/**
+	 * @return cache of other users' addresses
+	 */
+	public LookupCache getLookupCache() {
+		return lookupCache;
+	}
+
+	/**
+	 * Mailboxes and groups are kept in the DHT under keys made of a prefix ending in a colon,
+	 * so a username with a colon in it could be mistaken for one of them
+	 * @param name a username
+	 * @return True if the name can be registered as a username
+	 */
+	public static boolean isValidUsername(String name) {
+		return name != null && !name.isEmpty() && name.indexOf(':') < 0;
+	}
+
+	/**
+	 * Start accepting chats, then register the username with this client's address
+	 * unless someone else already has it, and collect any messages left in the meantime
+	 * @param name the username
+	 * @return future for True once registered, or False if the username is taken; fails
+	 * with an IllegalArgumentException if it is not a valid username, or with the
+	 * IOException if chats cannot be accepted, in which case nothing is registered
+	 */
+	public CompletableFuture<Boolean> login(final String name) {
+
+		if (!isValidUsername(name)) {
+			CompletableFuture<Boolean> invalid = new CompletableFuture<Boolean>();
+			invalid.completeExceptionally(new IllegalArgumentException("Username may not be empty or contain ':'"));
+			return invalid;
+		}
+
+		try {
+			startListening();
+		} catch (IOException e) {
+			CompletableFuture<Boolean> failed = new CompletableFuture<Boolean>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+
+		return dht.get(name).thenCompose(new Function<Object, CompletionStage<Boolean>>() {
+
+			public CompletionStage<Boolean> apply(Object existing) {
+
+				// Username already taken
+				if (existing != null) {
+					return CompletableFuture.completedFuture(false);
+				}
+
+				return dht.put(name, getAddress()).thenApply(new Function<Void, Boolean>() {
+					public Boolean apply(Void stored) {
+						username = name;
+						collectMail(name);
+						return true;
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Find where another user accepts chats, from the cache if they were looked up recently
+	 * @param name the user's username
+	 * @return future for their address, or null if they are not logged in
+	 */
+	public CompletableFuture<String> lookup(final String name) {
+
+		// Anything stored under such a name is a mailbox or group, not a user's address
+		if (!isValidUsername(name)) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		String cached = lookupCache.get(name);
+
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+
+		return dht.get(name).thenApply(new Function<Object, String>() {
+			public String apply(Object found) {
+
+				if (!(found instanceof String)) {
+					return null;
+				}
+
+				lookupCache.put(name, (String) found);
+				return (String) found;
+			}
+		});
+	}
+
+	/**
+	 * Look another user up and start a conversation with them. The listener is told
+	 * about the conversation before the future completes.
+	 * @param name the user's username
+	 * @return future for the conversation, or null if the user is not logged in; fails
+	 * with an IOException if they cannot be reached
+	 */
+	public CompletableFuture<ChatSession> openConversation(final String name) {
+
+		return lookup(name).thenApplyAsync(new Function<String, ChatSession>() {
+
+			public ChatSession apply(String address) {
+
+				if (address == null) {
+					return null;
+				}
+
+				ChatSession session;
+
+				try {
+					session = connect(name, address, null);
+				} catch (IOException e) {
+					throw new CompletionException(e);
+				}
+
+				opened(session, false);
+
+				return session;
+			}
+
+		}, CONNECTOR);
+	}
+
+	/**
+	 * @param group name of a group to become a member of, starting it if it has no members
+	 * @return future completing once the membership is stored
+	 * @throws IllegalStateException if no user is logged in
+	 */
+	public CompletableFuture<Void> joinGroup(String group) {
+
+		loggedIn();
+		return groups.join(group);
+	}
+
+	/**
+	 * @param group name of a group to stop being a member of
+	 * @return future completing once the membership is stored
+	 * @throws IllegalStateException if no user is logged in
+	 */
+	public CompletableFuture<Void> leaveGroup(String group) {
+
+		loggedIn();
+		return groups.leave(group);
+	}
+
+	/**
+	 * Send a message to every other member of a group. Returns straight away.
+	 * @param group name of the group
+	 * @param message the text
+	 * @throws IllegalStateException if no user is logged in
+	 */
+	public void sendToGroup(String group, String message) {
+
+		loggedIn();
+		groups.send(group, message);
+	}
+
+	/**
+	 * Leave a message in the mailbox of a user who is not logged in or cannot be reached
+	 * @param name the user's username
+	 * @param message the text
+	 * @return future for True once the message is stored, or False if the mailbox is full
+	 * @throws IllegalStateException if no user is logged in
+	 */
+	public CompletableFuture<Boolean> leaveMessage(String name, String message) {
+		return dht.append(name, loggedIn() + ": " + message);
+	}
+
+	/**
+	 * @return the username logged in with
+	 * @throws IllegalStateException if no user is logged in
+	 */
+	private String loggedIn() {
+
+		String name = username;
+
+		if (name == null) {
+			throw new IllegalStateException("No user is logged in");
+		}
+
+		return name;
+	}
+
+	/**
+	 * Close every conversation and remove the username from the DHT. The client goes
+	 * on accepting chats and may log in again.
+	 * @return future completing once the username is removed
+	 */
+	public CompletableFuture<Void> logout() {
+
+		for (ChatSession session : getConversations()) {
+			session.close();
+		}
+
+		String name = username;
+		username = null;
+
+		if (name == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		return dht.remove(name);
+	}
+
+	/**
+	 * Look a user up and open a stream to them, waiting for both. Called on a connector thread.
+	 * @param name the user's username
+	 * @param group group whose messages the stream relays, or null for a conversation
+	 * @return the stream, or null if the user is not logged in
+	 * @throws IOException if the user cannot be looked up or reached
+	 */
+	ChatSession connect(String name, String group) throws IOException {
+
+		String address;
+
+		try {
+			address = lookup(name).join();
+		} catch (CompletionException e) {
+			throw new IOException("Unable to look up " + name, e.getCause());
+		}
+
+		return address == null ? null : connect(name, address, group);
+	}
+
+	void groupMessageReceived(String group, String sender, String message) {
+
+		Listener current = listener;
+		if (current != null) {
+			current.groupMessageReceived(group, sender, message);
+		}
+	}
+
+	/**
+	 * @param ip address of a client
+	 * @param port port it accepts chats on
+	 * @return what is registered in the DHT for the client
+	 */
+	static String address(String ip, int port) {
+
+		if (port == ChatEngine.DEFAULT_PORT) {
+			return ip;
+		}
+
+		return (ip.indexOf(':') >= 0 ? "[" + ip + "]" : ip) + ":" + port;
+	}
+
+	/**
+	 * @param address what is registered in the DHT for a client
+	 * @return the client's IP address
+	 */
+	static String host(String address) {
+
+		if (address.startsWith("[")) {
+			return address.substring(1, address.indexOf(']'));
+		}
+
+		int colon = address.indexOf(':');
+
+		// A bare IPv6 address has more than one colon
+		if (colon < 0 || address.indexOf(':', colon + 1) >= 0) {
+			return address;
+		}
+
+		return address.substring(0, colon);
+	}
+
+	/**
+	 * @param address what is registered in the DHT for a client
+	 * @return the port the client accepts chats on
+	 */
+	static int port(String address) {
+
+		String host = host(address);
+		int end = address.startsWith("[") ? host.length() + 2 : host.length();
+
+		if (end >= address.length()) {
+			return ChatEngine.DEFAULT_PORT;
+		}
+
+		return Integer.parseInt(address.substring(end + 1));
+	}
+
+	/**
+	 * Empty the user's mailbox in the background and hand anything in it to the listener
+	 */
+	private void collectMail(final String name) {
+
+		dht.drain(name).whenComplete(new BiConsumer<List<String>, Throwable>() {
+			public void accept(List<String> messages, Throwable failure) {
+
+				Listener current = listener;
+
+				if (failure != null) {
+					System.out.println("Unable to collect messages left for " + name);
+				}
+
+				else if (!messages.isEmpty() && current != null) {
+					current.mailReceived(messages);
+				}
+			}
+		});
+	}
+
+	private ChatSession connect(String name, String address, String group) throws IOException {
+
+		ChatSession session;
+
+		try {
+			session = engine.connect(host(address), port(address), listening ? chatPort : 0, username, group);
+		} catch (IOException e) {
+			// The user may have moved, so look them up in the DHT again next time
+			lookupCache.invalidate(name);
+			throw e;
+		}
+
+		session.setPartner(name);
+		return session;
+	}
+
+	/**
+	 * Listen for chats the first time the user logs in
+	 * @throws IOException if the chat port cannot be listened on
+	 */
+	private synchronized void startListening() throws IOException {
+
+		if (listening) {
+			return;
+		}
+
+		try {
+
+			chatPort = engine.listen(chatPort, new ChatEngine.Acceptor() {
+				public void accepted(ChatSession session) {
+
+					if (session.getGroup() != null) {
+						groups.accepted(session);
+					}
+
+					else {
+						opened(session, true);
+					}
+				}
+			});
+			listening = true;
+
+		} catch (IOException e) {
+			System.out.println("Unable to accept chats on port " + chatPort);
+			throw e;
+		}
+	}
+
+	private void opened(ChatSession session, boolean incoming) {
+
+		conversations.add(session);
+
+		Listener current = listener;
+		if (current != null) {
+			current.conversationOpened(session, incoming);
+		}
+
+		session.setListener(sessionListener);
+	}
+}
@@ -0,0 +1,328 @@
+package distributedim;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Accepts NIO transport connections for one Node. A single selector thread reads
+ * the frames from every connection; each call is then run on a worker thread, since
+ * a call on one Node often makes calls to others, and the worker writes its reply,
+ * leaving it to the selector thread only when the socket is full.
+ * @author Kat Winter
+ */
+public class NioServer implements Runnable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private Node node;
+	private ServerSocketChannel serverChannel;
+	private Selector selector;
+	private ExecutorService workers;
+	private ConcurrentLinkedQueue<Runnable> selectorTasks;
+	private volatile boolean running = true;
+
+	/**
+	 * Constructor for a server listening for calls to a Node
+	 * @param port port to listen on, or 0 for any free port
+	 * @param node Node to make the calls on
+	 * @throws IOException if the port cannot be listened on
+	 */
+	public NioServer(int port, Node node) throws IOException {
+
+		this.node = node;
+		selectorTasks = new ConcurrentLinkedQueue<Runnable>();
+
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.socket().setReuseAddress(true);
+		serverChannel.bind(new InetSocketAddress(port));
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+		workers = Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread worker = new Thread(r, "nio-worker-" + getPort());
+				worker.setDaemon(true);
+				return worker;
+			}
+		});
+	}
+
+	/**
+	 * @return port the server is listening on
+	 */
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Start the selector thread
+	 */
+	public void start() {
+
+		Thread thread = new Thread(this, "nio-server-" + getPort());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop listening and close every connection
+	 */
+	public void close() {
+
+		running = false;
+		selector.wakeup();
+		workers.shutdown();
+	}
+
+	public void run() {
+
+		try {
+			while (running) {
+
+				selector.select();
+
+				Runnable task;
+				while ((task = selectorTasks.poll()) != null) {
+					task.run();
+				}
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+				while (keys.hasNext()) {
+
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					try {
+						if (!key.isValid()) {
+							continue;
+						}
+
+						if (key.isAcceptable()) {
+							accept();
+						}
+
+						else {
+							if (key.isReadable()) {
+								read(key);
+							}
+
+							if (key.isValid() && key.isWritable()) {
+								write(key);
+							}
+						}
+					} catch (IOException e) {
+						// The other end went away; its calls simply get no reply
+						disconnect(key);
+					}
+				}
+			}
+		} catch (IOException e) {
+			System.out.println("NIO server on port " + getPort() + " stopped: " + e.getMessage());
+		}
+
+		for (SelectionKey key : selector.keys()) {
+			disconnect(key);
+		}
+
+		try {
+			selector.close();
+		} catch (IOException ignored) {
+		}
+	}
+
+	private void accept() throws IOException {
+
+		SocketChannel channel = serverChannel.accept();
+
+		if (channel != null) {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			channel.register(selector, SelectionKey.OP_READ, new ConnectionState());
+		}
+	}
+
+	/**
+	 * Read whatever has arrived and hand every complete frame to a worker
+	 * @throws IOException if the connection failed or sent a length no frame can have
+	 */
+	private void read(SelectionKey key) throws IOException {
+
+		ConnectionState state = (ConnectionState) key.attachment();
+		SocketChannel channel = (SocketChannel) key.channel();
+
+		if (channel.read(state.in) < 0) {
+			disconnect(key);
+			return;
+		}
+
+		state.in.flip();
+
+		while (state.in.remaining() >= 4) {
+
+			int length = state.in.getInt(state.in.position());
+
+			// Whatever is at the other end is not speaking the transport; dropping it is
+			// left to the caller, as for any failed connection
+			if (length < 0 || length > NioTransport.MAX_LENGTH) {
+				throw new IOException("Invalid frame length " + length);
+			}
+
+			if (state.in.remaining() < 4 + length) {
+
+				// Make room for a frame bigger than the buffer
+				if (4 + length > state.in.capacity()) {
+					ByteBuffer larger = ByteBuffer.allocate(4 + length);
+					larger.put(state.in);
+					larger.flip();
+					state.in = larger;
+				}
+				break;
+			}
+
+			state.in.getInt();
+			byte[] frame = new byte[length];
+			state.in.get(frame);
+			dispatch(key, frame);
+		}
+
+		state.in.compact();
+	}
+
+	/**
+	 * Write queued replies until they are all written or the socket is full
+	 */
+	private void write(SelectionKey key) throws IOException {
+
+		ConnectionState state = (ConnectionState) key.attachment();
+		SocketChannel channel = (SocketChannel) key.channel();
+
+		synchronized (state) {
+
+			ByteBuffer reply;
+			while ((reply = state.out.peek()) != null) {
+
+				channel.write(reply);
+
+				if (reply.hasRemaining()) {
+					return;
+				}
+
+				state.out.poll();
+			}
+
+			key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	/**
+	 * Make one call on the Node and send its reply
+	 */
+	private void dispatch(final SelectionKey key, final byte[] frame) {
+
+		workers.execute(new Runnable() {
+			public void run() {
+
+				int request = 0;
+				int method = 0;
+				ByteBuffer reply;
+
+				try {
+					DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+					request = in.readInt();
+					in.readByte();
+					method = in.readShort();
+
+					Object[] args = new Object[in.readByte()];
+					for (int i = 0; i < args.length; i++) {
+						args[i] = WireCodec.read(in);
+					}
+
+					Object result = NioTransport.method(method).invoke(node, args);
+					reply = NioTransport.frame(request, NioTransport.REPLY, method, new Object[] { result });
+
+				} catch (Exception e) {
+					Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+					try {
+						reply = NioTransport.frame(request, NioTransport.FAILURE, method, new Object[] { cause.toString() });
+					} catch (IOException unreachable) {
+						return;
+					}
+				}
+
+				send(key, reply);
+			}
+		});
+	}
+
+	/**
+	 * Write a reply straight away from the worker when nothing is queued ahead of it,
+	 * otherwise queue it for the selector thread to write once the socket has room
+	 */
+	private void send(final SelectionKey key, ByteBuffer reply) {
+
+		ConnectionState state = (ConnectionState) key.attachment();
+
+		synchronized (state) {
+
+			if (state.out.isEmpty()) {
+				try {
+					((SocketChannel) key.channel()).write(reply);
+				} catch (IOException e) {
+					// Left for the selector thread to notice and disconnect
+					return;
+				}
+
+				if (!reply.hasRemaining()) {
+					return;
+				}
+			}
+
+			state.out.add(reply);
+		}
+
+		selectorTasks.add(new Runnable() {
+			public void run() {
+				if (key.isValid()) {
+					key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				}
+			}
+		});
+
+		selector.wakeup();
+	}
+
+	private void disconnect(SelectionKey key) {
+
+		key.cancel();
+
+		try {
+			key.channel().close();
+		} catch (IOException ignored) {
+		}
+	}
+
+	/**
+	 * Frames read but not yet complete, and replies not yet written, for one connection
+	 */
+	private static class ConnectionState {
+
+		private ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+		private ArrayDeque<ByteBuffer> out = new ArrayDeque<ByteBuffer>();
+	}
+}
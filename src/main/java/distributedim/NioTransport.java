@@ -0,0 +1,371 @@
+package distributedim;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lightweight alternative to RMI for DHT traffic. Calls on the iNode interface are sent
+ * as length-prefixed binary frames over NIO socket channels. Every Node reference to the
+ * same address shares one connection, and each call carries its own request number so
+ * that many calls from different threads can be waiting on that connection at once.
+ *
+ * Frames are [int length][int request][byte kind][short method][values...], where the length
+ * counts the bytes that follow it, a request carries its arguments and a reply its result.
+ * Node references travel as "host:port" addresses.
+ * @author Kat Winter
+ */
+public class NioTransport implements Transport {
+
+	/** Port a Node listens on, and so the port a bootstrap is looked for on, unless told otherwise */
+	public static final int DEFAULT_PORT = 4445;
+
+	/** Largest length a frame may give; anything longer means the stream is not transport frames */
+	public static final int MAX_LENGTH = 64 << 20;
+
+	/** Longest a call waits for its reply before giving up on the Node */
+	public static final long CALL_TIMEOUT_MILLIS = 60000;
+
+	static final byte REQUEST = 0;
+	static final byte REPLY = 1;
+	static final byte FAILURE = 2;
+
+	// Both ends number the iNode methods the same way so a call only needs to send the number
+	private static final Method[] METHODS;
+	private static final Map<Method, Integer> METHOD_NUMBERS;
+
+	static {
+		METHODS = iNode.class.getMethods();
+		Arrays.sort(METHODS, new Comparator<Method>() {
+			public int compare(Method a, Method b) {
+				return a.toGenericString().compareTo(b.toGenericString());
+			}
+		});
+
+		METHOD_NUMBERS = new HashMap<Method, Integer>();
+		for (int i = 0; i < METHODS.length; i++) {
+			METHOD_NUMBERS.put(METHODS[i], i);
+		}
+	}
+
+	private static final ConcurrentHashMap<String, iNode> stubs = new ConcurrentHashMap<String, iNode>();
+	private static final ConcurrentHashMap<String, Connection> connections = new ConcurrentHashMap<String, Connection>();
+
+	private String host;
+	private int port;
+	private NioServer server;
+
+	/**
+	 * Constructor for a transport listening on the default port
+	 */
+	public NioTransport() {
+		this(DEFAULT_PORT);
+	}
+
+	/**
+	 * Constructor for a transport listening on the given port
+	 * @param port port to listen on, or 0 for any free port
+	 */
+	public NioTransport(int port) {
+		this(null, port);
+	}
+
+	/**
+	 * Constructor for a transport listening on the given port and handing out
+	 * its own host name rather than the IP address the Node is named after
+	 * @param host host other Nodes should connect to, or null to use the Node's IP address
+	 * @param port port to listen on, or 0 for any free port
+	 */
+	public NioTransport(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	public iNode export(Node node, String nodeIP) throws RemoteException {
+
+		try {
+			server = new NioServer(port, node);
+			server.start();
+		} catch (IOException e) {
+			throw new RemoteException("Unable to listen on port " + port, e);
+		}
+
+		return stub((host != null ? host : nodeIP) + ":" + server.getPort());
+	}
+
+	public void bind(iNode node) {
+		// Every Node already listens for calls, so new Nodes can bootstrap through any of them
+	}
+
+	public iNode bootstrap(String bootIP) {
+		return stub(bootIP.indexOf(':') >= 0 ? bootIP : bootIP + ":" + DEFAULT_PORT);
+	}
+
+	/**
+	 * Stop listening for calls to the exported Node
+	 */
+	public void close() {
+
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	/**
+	 * @param address "host:port" of a Node
+	 * @return reference to the Node, shared by everyone referring to that address
+	 */
+	public static iNode stub(String address) {
+
+		iNode stub = stubs.get(address);
+
+		if (stub == null) {
+			stub = (iNode) Proxy.newProxyInstance(iNode.class.getClassLoader(), new Class<?>[] { iNode.class },
+					new StubHandler(address));
+			iNode existing = stubs.putIfAbsent(address, stub);
+			stub = existing != null ? existing : stub;
+		}
+
+		return stub;
+	}
+
+	/**
+	 * @param node reference to a Node reached over this transport
+	 * @return "host:port" of the Node
+	 */
+	static String addressOf(iNode node) {
+
+		if (Proxy.isProxyClass(node.getClass()) && Proxy.getInvocationHandler(node) instanceof StubHandler) {
+			return ((StubHandler) Proxy.getInvocationHandler(node)).address;
+		}
+
+		throw new IllegalArgumentException("Only Nodes reached over the NIO transport can be sent over it");
+	}
+
+	/**
+	 * @param number number of an iNode method
+	 * @return the method
+	 */
+	static Method method(int number) {
+		return METHODS[number];
+	}
+
+	/**
+	 * Encode a frame
+	 * @param request request number
+	 * @param kind REQUEST, REPLY or FAILURE
+	 * @param method number of the iNode method called
+	 * @param values arguments of a request, or the single result of a reply
+	 * @return the frame, ready to write
+	 * @throws IOException if a value cannot be encoded, or the frame would be too long
+	 */
+	static ByteBuffer frame(int request, byte kind, int method, Object[] values) throws IOException {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeInt(0);
+		out.writeInt(request);
+		out.writeByte(kind);
+		out.writeShort(method);
+		out.writeByte(values == null ? 0 : values.length);
+
+		if (values != null) {
+			for (Object value : values) {
+				WireCodec.write(out, value);
+			}
+		}
+
+		ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+		frame.putInt(0, frame.remaining() - 4);
+
+		if (frame.remaining() - 4 > MAX_LENGTH) {
+			throw new IOException("Frame of " + (frame.remaining() - 4) + " bytes is longer than " + MAX_LENGTH);
+		}
+
+		return frame;
+	}
+
+	private static Connection connection(String address) throws IOException {
+
+		Connection connection = connections.get(address);
+
+		if (connection == null || !connection.isOpen()) {
+
+			synchronized (connections) {
+
+				connection = connections.get(address);
+
+				if (connection == null || !connection.isOpen()) {
+					connection = new Connection(address);
+					connections.put(address, connection);
+				}
+			}
+		}
+
+		return connection;
+	}
+
+	/**
+	 * Turns calls on a Node reference into requests on the connection to its address
+	 */
+	private static class StubHandler implements InvocationHandler {
+
+		private String address;
+
+		private StubHandler(String address) {
+			this.address = address;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+			if (method.getDeclaringClass() == Object.class) {
+
+				if (method.getName().equals("equals")) {
+					return proxy == args[0];
+				}
+
+				if (method.getName().equals("hashCode")) {
+					return address.hashCode();
+				}
+
+				return "Node at " + address;
+			}
+
+			try {
+				return connection(address).call(METHOD_NUMBERS.get(method), args);
+			} catch (RemoteException e) {
+				throw e;
+			} catch (IOException e) {
+				throw new RemoteException("Unable to reach Node at " + address, e);
+			}
+		}
+	}
+
+	/**
+	 * One connection to a Node, shared by every call made to it. Calls are written
+	 * as they are made and a reader thread hands each reply to the call waiting for it.
+	 */
+	private static class Connection implements Runnable {
+
+		private String address;
+		private SocketChannel channel;
+		private AtomicInteger requests;
+		private ConcurrentHashMap<Integer, CompletableFuture<Object>> pending;
+
+		private Connection(String address) throws IOException {
+
+			this.address = address;
+			requests = new AtomicInteger();
+			pending = new ConcurrentHashMap<Integer, CompletableFuture<Object>>();
+
+			int colon = address.lastIndexOf(':');
+			channel = SocketChannel.open(new InetSocketAddress(address.substring(0, colon),
+					Integer.parseInt(address.substring(colon + 1))));
+			channel.socket().setTcpNoDelay(true);
+
+			Thread reader = new Thread(this, "nio-client-" + address);
+			reader.setDaemon(true);
+			reader.start();
+		}
+
+		private boolean isOpen() {
+			return channel.isOpen();
+		}
+
+		private Object call(int method, Object[] args) throws IOException, RemoteException {
+
+			int request = requests.incrementAndGet();
+			ByteBuffer frame;
+
+			try {
+				frame = frame(request, REQUEST, method, args);
+			} catch (IOException e) {
+				throw new RemoteException("Unable to encode call to Node at " + address + ": " + e.getMessage(), e);
+			}
+
+			CompletableFuture<Object> reply = new CompletableFuture<Object>();
+
+			try {
+				pending.put(request, reply);
+
+				synchronized (this) {
+					while (frame.hasRemaining()) {
+						channel.write(frame);
+					}
+				}
+
+				return reply.get(CALL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+			} catch (TimeoutException e) {
+				throw new RemoteException("Node at " + address + " did not answer within " + CALL_TIMEOUT_MILLIS + " ms");
+			} catch (ExecutionException e) {
+				throw new RemoteException("Call to Node at " + address + " failed", e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RemoteException("Interrupted waiting for Node at " + address, e);
+			} finally {
+				pending.remove(request);
+			}
+		}
+
+		public void run() {
+
+			try {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+
+				while (true) {
+
+					in.readInt();
+					int request = in.readInt();
+					byte kind = in.readByte();
+					in.readShort();
+					int count = in.readByte();
+					Object result = count > 0 ? WireCodec.read(in) : null;
+
+					CompletableFuture<Object> reply = pending.get(request);
+
+					if (reply != null) {
+						if (kind == FAILURE) {
+							reply.completeExceptionally(new RemoteException(String.valueOf(result)));
+						}
+						else {
+							reply.complete(result);
+						}
+					}
+				}
+
+			} catch (IOException e) {
+				// Connection lost; anyone still waiting is told and the next call reconnects
+				try {
+					channel.close();
+				} catch (IOException ignored) {
+				}
+
+				for (CompletableFuture<Object> reply : pending.values()) {
+					reply.completeExceptionally(e);
+				}
+			}
+		}
+	}
+}
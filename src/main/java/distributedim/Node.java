@@ -0,0 +1,1519 @@
+package distributedim;
+
+import java.rmi.*;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Implementation of the iNode interface for a Node in a DHT
+ * @author Kat Winter
+ */
+public class Node implements iNode {
+	
+	/** Number of iterative lookups this Node will drive at the same time */
+	public static final int MAX_LOOKUPS_IN_FLIGHT = 16;
+	
+	/** Default number of Nodes following each Node that hold replicas of its keys */
+	public static final int DEFAULT_REPLICAS = 2;
+	
+	/** Number of messages a mailbox holds before further messages are turned away */
+	public static final int MAILBOX_CAPACITY = 1000;
+	
+	private iNode nextNode;
+	private iNode prevNode;
+	private Identifier nextID;
+	private Identifier prevID;
+	private String nodeIP;
+	private iNode self;
+	private Identifier identifier;
+	private Storage storage;
+	private boolean bootStrap = false;
+	private FingerTable fingers;
+	private boolean iterative = false;
+	private ExecutorService lookups;
+	private int replicas = DEFAULT_REPLICAS;
+	private Storage replicaStorage;
+	private iNode[] successors;
+	private Identifier[] successorIDs;
+	private iNode[] nextSuccessors;
+	private Transport transport;
+	private final Object mailboxes = new Object();
+	private NodeMetrics metrics;
+	private Node[] siblings = new Node[0];
+	private ConcurrentSkipListMap<Identifier, iNode> members = new ConcurrentSkipListMap<Identifier, iNode>();
+	private List<iNode> bootstraps = new ArrayList<iNode>();
+	private volatile boolean inRing = false;
+	
+	/**
+	 * Constructor for a new Node in the DHT
+	 * @param nodeIP unhashed IP address of the Node
+	 */
+	public Node(String nodeIP) {
+		
+		this(nodeIP, new SkipListStorage());
+	}
+	
+	/**
+	 * Constructor for a new Node in the DHT with its own choice of storage engine
+	 * @param nodeIP unhashed IP address of the Node
+	 * @param storage storage engine to hold the key/data pairs for this Node
+	 */
+	public Node(String nodeIP, Storage storage) {
+		
+		this(nodeIP, storage, defaultTransport());
+	}
+	
+	/**
+	 * Constructor for a new Node in the DHT with its own choice of storage engine and transport
+	 * @param nodeIP unhashed IP address of the Node
+	 * @param storage storage engine to hold the key/data pairs for this Node
+	 * @param transport means by which this Node reaches, and is reached by, the other Nodes
+	 */
+	public Node(String nodeIP, Storage storage, Transport transport) {
+		
+		this(nodeIP, 0, storage, transport);
+	}
+	
+	/**
+	 * Constructor for one of several virtual Nodes run by the same host, each taking its
+	 * own position in the Ring. Position 0 is where a Node with the same IP address sits.
+	 * @param nodeIP unhashed IP address of the host
+	 * @param position number of this virtual Node on the host
+	 * @param storage storage engine to hold the key/data pairs for this Node
+	 * @param transport means by which this Node reaches, and is reached by, the other Nodes
+	 */
+	public Node(String nodeIP, int position, Storage storage, Transport transport) {
+		
+		this.nodeIP = nodeIP;
+		this.storage = storage;
+		this.transport = transport;
+		replicaStorage = new SkipListStorage();
+		identifier = Hash.hashID(position == 0 ? nodeIP : nodeIP + "#" + position);
+		metrics = new NodeMetrics(position == 0 ? nodeIP : nodeIP + "#" + position, storage);
+		
+		try {
+			self = transport.export(this, nodeIP);
+		} catch (RemoteException e) {
+			System.out.println("Error creating remote object of myself");
+			e.printStackTrace();
+		}
+		System.out.println("Identifier for " + nodeIP + " is " + identifier);
+		
+		nextNode = self;
+		prevNode = self;
+		nextID = identifier;
+		prevID = identifier;
+		fingers = new FingerTable(self, identifier);
+		successors = new iNode[0];
+		successorIDs = new Identifier[0];
+		nextSuccessors = new iNode[0];
+		
+		lookups = Executors.newFixedThreadPool(MAX_LOOKUPS_IN_FLIGHT, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread lookup = new Thread(r, "lookup-" + Node.this.nodeIP);
+				lookup.setDaemon(true);
+				return lookup;
+			}
+		});
+	}
+	
+	/**
+	 * Transport chosen with -Ddht.transport=rmi (the default) or -Ddht.transport=nio,
+	 * the latter listening on -Ddht.port (default 4445). With RMI the bootstrap is bound
+	 * in the registry on -Ddht.registry (default 1099) under -Ddht.bootstrap (default "bootstrap").
+	 * @return the transport
+	 */
+	private static Transport defaultTransport() {
+		
+		if ("nio".equals(System.getProperty("dht.transport"))) {
+			return new NioTransport(Integer.getInteger("dht.port", NioTransport.DEFAULT_PORT));
+		}
+		
+		return new RmiTransport(Integer.getInteger("dht.registry", Registry.REGISTRY_PORT),
+				System.getProperty("dht.bootstrap", RmiTransport.DEFAULT_NAME));
+	}
+	
+	/**
+	 * Choose how get/put/remove find the Node storing a key. In recursive mode (the default)
+	 * each Node forwards the request on to the next; in iterative mode this Node asks each
+	 * Node in turn for the next one to ask, so no other Node holds a thread for the lookup.
+	 * @param iterative True to drive lookups from this Node
+	 */
+	public void setIterative(boolean iterative) {
+		this.iterative = iterative;
+	}
+	
+	/**
+	 * Set how many of the Nodes following this Node hold replicas of its keys.
+	 * Reads may be served by any of them, spreading the load of popular keys.
+	 * Should be set the same on every Node before it creates or joins the Ring.
+	 * @param replicas Number of replicas of each key, 0 to keep a single copy
+	 */
+	public void setReplicationFactor(int replicas) {
+		this.replicas = replicas;
+	}
+	
+	/**
+	 * Set up a bootstrap for the Ring (with RMI, bind it in the transport's registry)
+	 * @throws RemoteException
+	 */
+	public void beBootStrap() throws RemoteException {
+		
+		if (!bootStrap) {
+		
+			transport.bind(self);
+			members.put(identifier, self);
+			bootStrap = true;
+		}
+	}
+	
+	/**
+	 * Create a Ring as its first member
+	 */
+	public void create() throws RemoteException {
+		
+		beBootStrap();
+		inRing = true;
+		metrics.register();
+	}
+	
+	/**
+	 * Open a socket to an existing Node (bootstrap) and register this
+	 * Node as part of the ring. Several bootstraps may be given, separated by commas,
+	 * in which case one is picked at random to spread joins across them, and the
+	 * others are tried in turn if it cannot be reached.
+	 * @param bootIP the IP of the existing Node acting as bootstrap, or a comma separated list of them
+	 * @throws RemoteException, NoBoundException
+	 */
+	public void join(String bootIP) throws RemoteException, NotBoundException {
+		
+		String[] bootIPs = bootIP.split(",");
+		int first = ThreadLocalRandom.current().nextInt(bootIPs.length);
+		
+		for (int i = 0; i < bootIPs.length; i++) {
+			
+			iNode existing;
+			
+			try {
+				existing = transport.bootstrap(bootIPs[(first + i) % bootIPs.length].trim());
+				
+				// A bootstrap that has left is still bound, but joining through it would start a Ring of its own
+				if (!existing.isInRing()) {
+					throw new RemoteException("Bootstrap " + bootIPs[(first + i) % bootIPs.length].trim() + " has left the Ring");
+				}
+			} catch (RemoteException e) {
+				if (i == bootIPs.length - 1) {
+					throw e;
+				}
+				continue;
+			} catch (NotBoundException e) {
+				if (i == bootIPs.length - 1) {
+					throw e;
+				}
+				continue;
+			}
+			
+			join(existing);
+			announce(Collections.singletonList(existing));
+			return;
+		}
+	}
+	
+	/**
+	 * Join the Ring through a Node already in it
+	 * @param existing the Node, which may be another virtual Node of this host
+	 * @throws RemoteException
+	 */
+	void join(iNode existing) throws RemoteException {
+		
+		existing.addNodeToRing(self);
+		inRing = true;
+		metrics.register();
+		
+		initFingerTable();
+		updateOthers();
+		republish();
+		joinReplication();
+	}
+	
+	/**
+	 * Tell bootstraps that this Node is in the Ring, so they can send new Nodes straight
+	 * to it, and remember them so they can be told when it leaves
+	 * @param bootstraps the bootstraps; any Node not acting as one ignores this
+	 * @throws RemoteException
+	 */
+	void announce(List<iNode> bootstraps) throws RemoteException {
+		
+		for (iNode bootstrap : bootstraps) {
+			bootstrap.memberJoined(identifier, self);
+			this.bootstraps.add(bootstrap);
+		}
+	}
+	
+	/**
+	 * @return the bootstraps this Node has announced itself to, and this Node if it is one
+	 */
+	List<iNode> getBootstraps() {
+		
+		List<iNode> known = new ArrayList<iNode>(bootstraps);
+		if (bootStrap) {
+			known.add(self);
+		}
+		
+		return known;
+	}
+	
+	/**
+	 * Hand any keys this Node recovered from durable storage, but which fall outside
+	 * its range in the Ring it has just joined, to the Nodes that now cover them.
+	 * A key is only handed over if the Ring does not already hold newer data for it.
+	 * @throws RemoteException
+	 */
+	private void republish() throws RemoteException {
+		
+		if (identifier.compareTo(prevID) > 0) {
+			republish(storage.upTo(prevID));
+		}
+		
+		if (identifier.compareTo(nextID) < 0) {
+			republish(storage.after(identifier));
+		}
+	}
+	
+	private void republish(SortedMap<Identifier, Object> range) throws RemoteException {
+		
+		for (Map.Entry<Identifier, Object> entry : range.entrySet()) {
+			
+			// This node no longer covers the key, so these are routed to the node that does
+			if (get(entry.getKey()) == null) {
+				put(entry.getKey(), entry.getValue());
+			}
+			
+			storage.remove(entry.getKey(), entry.getValue());
+		}
+	}
+	
+	/**
+	 * Fill in the finger table of this Node once it has been linked into the Ring.
+	 * Fingers whose start is already covered by the previous finger are reused
+	 * so only about log(N) lookups are needed.
+	 * @throws RemoteException
+	 */
+	private void initFingerTable() throws RemoteException {
+		
+		fingers.set(0, nextNode, nextID);
+		
+		for (int i = 1; i < FingerTable.BITS; i++) {
+			
+			Identifier start = fingers.getStart(i);
+			Identifier previous = fingers.getNodeID(i - 1);
+			
+			if (start.isBetweenRightIncl(identifier, previous)) {
+				fingers.set(i, fingers.getNode(i - 1), previous);
+			}
+			
+			else {
+				iNode successor = nextNode.findSuccessor(start);
+				fingers.set(i, successor, successor.getID());
+			}
+		}
+	}
+	
+	/**
+	 * Offer this Node to every Node whose finger table should now point at it
+	 * @throws RemoteException
+	 */
+	private void updateOthers() throws RemoteException {
+		
+		for (int i = 0; i < FingerTable.BITS; i++) {
+			
+			iNode p = precedingNodeFor(i);
+			
+			if (p != null) {
+				p.updateFingerTable(self, identifier, i);
+			}
+		}
+	}
+	
+	/**
+	 * Find the last Node whose finger i could point at this Node
+	 * @param i Index of the finger
+	 * @return the Node, or null if that Node is this Node
+	 * @throws RemoteException
+	 */
+	private iNode precedingNodeFor(int i) throws RemoteException {
+		
+		Identifier target = identifier.subtract(Identifier.powerOfTwo(i)).add(Identifier.ONE);
+		
+		// Avoid a lookup when the answer is simply the previous node
+		if (target.isBetweenRightIncl(prevID, identifier)) {
+			return prevID.equals(identifier) ? null : prevNode;
+		}
+		
+		iNode p = findPredecessor(target);
+		
+		return p.getID().equals(identifier) ? null : p;
+	}
+	
+	public void updateFingerTable(iNode node, Identifier nodeID, int i) throws RemoteException {
+		
+		if (!nodeID.equals(identifier) && fingers.isCloser(i, nodeID)) {
+			
+			fingers.set(i, node, nodeID);
+			
+			if (!prevID.equals(nodeID)) {
+				prevNode.updateFingerTable(node, nodeID, i);
+			}
+		}
+	}
+	
+	public void removeFromFingerTable(Identifier oldID, iNode replacement, Identifier replacementID, int i) throws RemoteException {
+		
+		if (fingers.getNodeID(i).equals(oldID)) {
+			
+			fingers.set(i, replacement, replacementID);
+			
+			if (!prevID.equals(oldID)) {
+				prevNode.removeFromFingerTable(oldID, replacement, replacementID, i);
+			}
+		}
+	}
+	
+	public iNode findSuccessor(Identifier id) throws RemoteException {
+		
+		if (id.equals(identifier)) {
+			return self;
+		}
+		
+		if (id.isBetweenRightIncl(identifier, nextID)) {
+			return nextNode;
+		}
+		
+		return closestPrecedingNode(id).findSuccessor(id);
+	}
+	
+	public iNode findPredecessor(Identifier id) throws RemoteException {
+		
+		if (id.isBetweenRightIncl(identifier, nextID)) {
+			return self;
+		}
+		
+		return closestPrecedingNode(id).findPredecessor(id);
+	}
+	
+	/**
+	 * @param id Hashed position on the ring
+	 * @return the finger that most closely precedes the position, or the next Node if none do
+	 */
+	private iNode closestPrecedingNode(Identifier id) {
+		
+		Hop closest = fingers.closestPrecedingHop(id);
+		
+		return closest != null ? closest.getNode() : nextNode;
+	}
+	
+	/**
+	 * Check if a hashed key falls within the range of keys stored at this Node.
+	 * The smallest Node stores every key up to its identifier and the largest Node
+	 * stores every key beyond its identifier.
+	 * @param key Hashed key
+	 * @return True if this Node should store the key
+	 */
+	private boolean owns(Identifier key) {
+		
+		boolean smallest = identifier.compareTo(prevID) <= 0;
+		boolean largest = identifier.compareTo(nextID) >= 0;
+		
+		return (smallest || key.compareTo(prevID) > 0) && (largest || key.compareTo(identifier) <= 0);
+	}
+	
+	/**
+	 * @param key Hashed key
+	 * @return the Node to forward a request for the key to when this Node does not store it
+	 */
+	private Hop route(Identifier key) {
+		
+		// If the key falls just after this node, the next node is the one to ask
+		if (key.isBetweenRightIncl(identifier, nextID)) {
+			return new Hop(nextNode, nextID, false);
+		}
+		
+		Hop closest = fingers.closestPrecedingHop(key);
+		
+		return closest != null ? closest : new Hop(nextNode, nextID, false);
+	}
+	
+	/**
+	 * @param siblings the other virtual Nodes run by the same host
+	 */
+	void setSiblings(Node[] siblings) {
+		this.siblings = siblings;
+	}
+	
+	/**
+	 * A request can jump straight to another virtual Node of this host, without a remote
+	 * call, when that Node sits closer before the key than this one
+	 * @param key Hashed key
+	 * @return the virtual Node of this host closest before the key, which may be this Node
+	 */
+	private Node nearestSibling(Identifier key) {
+		
+		Node nearest = this;
+		
+		for (Node sibling : siblings) {
+			
+			// Nothing is closer than a Node at the key itself, otherwise a sibling after the
+			// nearest so far and up to the key is closer, found without working out distances
+			if (!nearest.identifier.equals(key) && sibling.identifier.isBetweenRightIncl(nearest.identifier, key)) {
+				nearest = sibling;
+			}
+		}
+		
+		return nearest;
+	}
+	
+	/**
+	 * @param id hashed IP address of a Node
+	 * @return the Node if it is another virtual Node of this host, otherwise null
+	 */
+	private Node sibling(Identifier id) {
+		
+		for (Node sibling : siblings) {
+			if (sibling.identifier.equals(id)) {
+				return sibling;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * @param node a Node, or its remote reference
+	 * @return the Node itself if it is another virtual Node of this host, so it can be called
+	 * directly, otherwise the reference as given
+	 * @throws RemoteException
+	 */
+	private iNode local(iNode node) throws RemoteException {
+		
+		if (siblings.length == 0) {
+			return node;
+		}
+		
+		Node sibling = sibling(node.getID());
+		
+		return sibling != null ? sibling : node;
+	}
+	
+	/**
+	 * @return hashed IP address of the Node this Node hands its keys to when it leaves
+	 */
+	Identifier getHeirID() {
+		return identifier.compareTo(nextID) > 0 ? prevID : nextID;
+	}
+	
+	public Hop nextHop(Identifier key) {
+		
+		if (owns(key)) {
+			Hop hop = new Hop(self, identifier, true);
+			hop.setReplicas(getSuccessorList());
+			return hop;
+		}
+		
+		// If the key falls just after this node, the next node stores it and the nodes following it hold replicas
+		if (key.isBetweenRightIncl(identifier, nextID)) {
+			Hop hop = new Hop(nextNode, nextID, true);
+			hop.setReplicas(successorsAfterNext());
+			return hop;
+		}
+		
+		Node sibling = nearestSibling(key);
+		if (sibling != this) {
+			return sibling.nextHop(key);
+		}
+		
+		return route(key);
+	}
+	
+	/**
+	 * Find the Node storing a key by asking one Node after another for the next
+	 * Node to ask, rather than having each Node forward the request
+	 * @param key Hashed key
+	 * @return answer from the Node storing the key, including the number of hops taken
+	 * @throws RemoteException
+	 */
+	public Hop findOwner(Identifier key) throws RemoteException {
+		
+		Hop owner = walk(nextHop(key), key, 0);
+		metrics.hops.record(owner.getHops());
+		return owner;
+	}
+	
+	/**
+	 * Carry on an iterative lookup from an answer already received
+	 * @param hop Most recent answer
+	 * @param key Hashed key
+	 * @param hops Number of remote Nodes asked so far
+	 * @return answer from the Node storing the key, including the number of hops taken
+	 * @throws RemoteException
+	 */
+	private Hop walk(Hop hop, Identifier key, int hops) throws RemoteException {
+		
+		while (!hop.isOwner()) {
+			
+			// Give up if the ring is changing too quickly for the lookup to settle
+			if (++hops > 2 * FingerTable.BITS) {
+				throw new RemoteException("Lookup for " + key + " did not reach the node storing it");
+			}
+			
+			hop = hop.getNode().nextHop(key);
+		}
+		
+		hop.setHops(hops);
+		return hop;
+	}
+	
+	/**
+	 * Start an iterative lookup of an unhashed key without waiting for it to finish.
+	 * Up to MAX_LOOKUPS_IN_FLIGHT lookups run at once; the rest wait their turn.
+	 * @param k Unhashed key
+	 * @return answer from the Node storing the key, once the lookup completes
+	 */
+	public Future<Hop> lookup(final String k) {
+		
+		return lookups.submit(new Callable<Hop>() {
+			public Hop call() throws RemoteException {
+				return findOwner(Hash.hashID(k));
+			}
+		});
+	}
+	
+	/**
+	 * @param key Hashed key
+	 * @return the Node storing the key when looked up iteratively, or the Node to forward the request to
+	 * @throws RemoteException
+	 */
+	private iNode forwardTo(Identifier key) throws RemoteException {
+		
+		if (iterative) {
+			return findOwner(key).getNode();
+		}
+		
+		metrics.forwards.increment();
+		return route(key).getNode();
+	}
+	
+	/**
+	 * Build the successor lists of this Node and of the Nodes before it now that
+	 * it has joined, and have the Node that was last to hold replicas of this
+	 * Node's range on behalf of the next Node drop them
+	 * @throws RemoteException
+	 */
+	private void joinReplication() throws RemoteException {
+		
+		if (replicas == 0) {
+			return;
+		}
+		
+		// One Node further back than the lists that change, as it keeps the list of the Node after it
+		refreshSuccessors(replicas + 1);
+		
+		iNode[] nextList = nextNode.getSuccessorList();
+		
+		if (getSuccessorList().length == replicas && nextList.length == replicas) {
+			
+			iNode beyond = nextList[replicas - 1];
+			Identifier beyondID = beyond.getID();
+			
+			if (!beyondID.equals(identifier) && !isSuccessor(beyondID)) {
+				dropOwnRange(beyond);
+			}
+		}
+	}
+	
+	public synchronized iNode[] getSuccessorList() {
+		return successors.clone();
+	}
+	
+	/**
+	 * @param id hashed IP address of a Node
+	 * @return True if the Node is in this Node's successor list
+	 */
+	private synchronized boolean isSuccessor(Identifier id) {
+		
+		for (Identifier successorID : successorIDs) {
+			if (successorID.equals(id)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * @return the next Node's successor list as it stood when this Node last refreshed its
+	 * own, which names the Nodes holding replicas of the keys stored at the next Node
+	 */
+	private synchronized iNode[] successorsAfterNext() {
+		
+		Node next = sibling(nextID);
+		if (next != null) {
+			return next.getSuccessorList();
+		}
+		
+		return nextSuccessors;
+	}
+	
+	public void refreshSuccessors(int depth) throws RemoteException {
+		
+		ArrayList<iNode> list = new ArrayList<iNode>();
+		ArrayList<Identifier> ids = new ArrayList<Identifier>();
+		iNode[] nextList = new iNode[0];
+		
+		if (replicas > 0 && !nextID.equals(identifier)) {
+			
+			// Replicas on another virtual Node of this host would go down with it, so siblings are
+			// left out. A sibling's own list already leaves out every Node of this host.
+			if (sibling(nextID) == null) {
+				list.add(nextNode);
+				ids.add(nextID);
+			}
+			
+			nextList = nextNode.getSuccessorList();
+			
+			// Stop early if the ring is small enough to wrap back around to this node
+			for (iNode node : nextList) {
+				
+				Identifier id = node.getID();
+				
+				if (list.size() >= replicas || id.equals(identifier) || ids.contains(id)) {
+					break;
+				}
+				
+				if (sibling(id) == null) {
+					list.add(node);
+					ids.add(id);
+				}
+			}
+		}
+		
+		iNode[] oldList;
+		Identifier[] oldIDs;
+		
+		synchronized (this) {
+			oldList = successors;
+			oldIDs = successorIDs;
+			successors = list.toArray(new iNode[list.size()]);
+			successorIDs = ids.toArray(new Identifier[ids.size()]);
+			nextSuccessors = nextList;
+		}
+		
+		// Nodes new to the list need replicas of everything stored here
+		for (int i = 0; i < list.size(); i++) {
+			
+			if (!contains(oldIDs, ids.get(i))) {
+				try {
+					BulkTransfer.replicate(storage.all(), list.get(i));
+				} catch (RemoteException e) {
+					System.out.println("Problem replicating keys to successor node");
+					metrics.remoteFailures.increment();
+				}
+			}
+		}
+		
+		// Nodes no longer in the list can drop their replicas
+		for (int i = 0; i < oldList.length; i++) {
+			
+			if (!ids.contains(oldIDs[i])) {
+				try {
+					dropOwnRange(oldList[i]);
+				} catch (RemoteException e) {
+					System.out.println("Problem dropping replicas from former successor node");
+					metrics.remoteFailures.increment();
+				}
+			}
+		}
+		
+		if (depth > 0 && !prevID.equals(identifier)) {
+			prevNode.refreshSuccessors(depth - 1);
+		}
+	}
+	
+	private static boolean contains(Identifier[] ids, Identifier id) {
+		
+		for (Identifier candidate : ids) {
+			if (candidate.equals(id)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Have a Node drop its replicas of the range of keys stored at this Node
+	 * @param node Node that no longer holds replicas for this Node
+	 * @throws RemoteException
+	 */
+	private void dropOwnRange(iNode node) throws RemoteException {
+		
+		Identifier low = identifier.compareTo(prevID) <= 0 ? null : prevID;
+		Identifier high = identifier.compareTo(nextID) >= 0 ? null : identifier;
+		
+		node.dropReplicas(low, high);
+	}
+	
+	/**
+	 * Send replicas of newly stored keys to every Node in the successor list
+	 * @param keys Hashed keys
+	 * @param data Data stored, in the same order as the keys
+	 */
+	private void replicate(Identifier[] keys, Object[] data) {
+		
+		for (iNode successor : getSuccessorList()) {
+			try {
+				successor.storeReplicas(keys, data);
+			} catch (RemoteException e) {
+				System.out.println("Problem replicating keys to successor node");
+				metrics.remoteFailures.increment();
+			}
+		}
+	}
+	
+	public int storeReplicas(Identifier[] keys, Object[] data) {
+		
+		for (int i = 0; i < keys.length; i++) {
+			replicaStorage.put(keys[i], data[i]);
+		}
+		
+		return keys.length;
+	}
+	
+	public void removeReplica(Identifier key) {
+		replicaStorage.remove(key);
+	}
+	
+	public void dropReplicas(Identifier low, Identifier high) {
+		
+		SortedMap<Identifier, Object> range = low == null ? replicaStorage.all() : replicaStorage.after(low);
+		
+		for (Identifier key : range.keySet()) {
+			
+			if (high != null && key.compareTo(high) > 0) {
+				break;
+			}
+			
+			replicaStorage.remove(key);
+		}
+	}
+	
+	public Object getReplica(Identifier key) {
+		
+		Object data = storage.get(key);
+		
+		return data != null ? data : replicaStorage.get(key);
+	}
+	
+	/**
+	 * Read a key from either the Node storing it or one of the Nodes holding
+	 * replicas of it, chosen at random so that reads of a popular key are spread out
+	 * @param owner Node storing the key
+	 * @param holders Nodes holding replicas of the key, or null if none are known
+	 * @param key Hashed key
+	 * @return The data for the key
+	 * @throws RemoteException
+	 */
+	private Object read(iNode owner, iNode[] holders, Identifier key) throws RemoteException {
+		
+		int choice = holders == null ? 0 : ThreadLocalRandom.current().nextInt(holders.length + 1);
+		
+		if (choice > 0) {
+			try {
+				Object data = holders[choice - 1].getReplica(key);
+				
+				// A replica may not have caught up with a key that was only just stored, so only trust it when it has the key
+				if (data != null) {
+					return data;
+				}
+			} catch (RemoteException e) {
+				// Fall back to the node storing the key
+			}
+		}
+		
+		return owner.get(key);
+	}
+	
+	/**
+	 * Transfer data to a Node that has just joined the Ring
+	 * @param Node to receive the key/data values
+	 */
+	public void transferData(iNode newNode) {
+		
+		// Keys up to the previous node's identifier are no longer covered here, unless this is the smallest node
+		if (identifier.compareTo(prevID) > 0) {
+			move(storage.upTo(prevID), newNode, "Problem inserting keys to new node");
+		}
+		
+		// Keys beyond this node's identifier are no longer covered here, unless this is the largest node
+		if (identifier.compareTo(nextID) < 0) {
+			move(storage.after(identifier), newNode, "Problem inserting keys to new node");
+		}
+	}
+	
+	/**
+	 * Transfer all keys/data from this Node to other Node
+	 * @param Node to receive the data
+	 */
+	private void fullTransfer(iNode recipient) {
+		
+		move(storage.all(), recipient, "Problem inserting keys to recipient node");
+	}
+	
+	/**
+	 * Move a range of keys/data from this Node to another Node in pipelined batches.
+	 * Keys are only dropped from this Node once the recipient has acknowledged them,
+	 * so keys that fail to transfer are kept rather than lost.
+	 * @param range view of the keys to move
+	 * @param recipient Node to receive the data
+	 * @param failure message to log if the recipient cannot be reached
+	 */
+	private void move(SortedMap<Identifier, Object> range, iNode recipient, String failure) {
+		
+		if (range.isEmpty()) {
+			return;
+		}
+		
+		long start = System.nanoTime();
+		
+		try {
+			metrics.keysTransferred.add(BulkTransfer.send(storage, range, local(recipient)));
+		} catch (RemoteException e) {
+			System.out.println(failure);
+			metrics.remoteFailures.increment();
+		}
+		
+		metrics.transfers.recordSince(start);
+	}
+	
+	/**
+	 * Insert key/data directly into this node's storage
+	 * Precondition: This key,val pair should belong to this node
+	 * @param key Hashed key to store
+	 * @param data Data to store for the key
+	 */
+	public void insert(Identifier key, Object data) {
+		
+		storage.put(key, data);
+		replicate(new Identifier[] { key }, new Object[] { data });
+	}
+	
+	public int insertBatch(Identifier[] keys, Object[] data) {
+		
+		for (int i = 0; i < keys.length; i++) {
+			storage.put(keys[i], data[i]);
+			replicaStorage.remove(keys[i]);
+		}
+		
+		replicate(keys, data);
+		
+		return keys.length;
+	}
+	
+	public void addNodeToRing(iNode newNode) throws RemoteException {
+		
+		// Having left, this Node is a Ring of one, and the new Node would join that instead
+		if (!inRing) {
+			throw new RemoteException("Node has left the Ring");
+		}
+		
+		long start = System.nanoTime();
+		
+		try {
+			
+			Identifier newID = newNode.getID();
+			
+			// Check if the new node belongs directly after this node (or this is the only node)
+			if (identifier.equals(nextID) || newID.isBetween(identifier, nextID)) {
+				
+				boolean wasLargest = identifier.compareTo(nextID) >= 0;
+				iNode oldNext = nextNode;
+				
+				oldNext.setPrev(newNode);
+				newNode.setNext(oldNext);
+				newNode.setPrev(self);
+				setNext(newNode);
+				
+				// If the new node is now the largest in the ring it takes the keys beyond this node,
+				// otherwise the node following it hands over the keys it no longer covers
+				if (wasLargest && newID.compareTo(identifier) > 0) {
+					transferData(newNode);
+				}
+				
+				else {
+					oldNext.transferData(newNode);
+				}
+			}
+			
+			// Otherwise send it on to the closest node preceding it that this node knows of
+			else {
+				forwardJoin(newNode, newID);
+			}
+			
+		} catch (RemoteException e) {
+			System.out.println("Remote Exception");
+			metrics.remoteFailures.increment();
+			
+			// The new Node has to know it is not in the Ring
+			throw e;
+		} finally {
+			metrics.joins.recordSince(start);
+		}
+	}
+	
+	/**
+	 * Send a joining node on towards its place in the Ring. A bootstrap keeps every node
+	 * that has announced itself to it sorted by identifier, so it can usually send a new node
+	 * straight to the node it will follow rather than along the fingers.
+	 * @param newNode Node joining the Ring
+	 * @param newID hashed IP address of the joining Node
+	 * @throws RemoteException
+	 */
+	private void forwardJoin(iNode newNode, Identifier newID) throws RemoteException {
+		
+		Hop finger = fingers.closestPrecedingHop(newID);
+		iNode next = finger != null ? finger.getNode() : nextNode;
+		Identifier nextHopID = finger != null ? finger.getNodeID() : nextID;
+		
+		if (bootStrap) {
+			
+			Map.Entry<Identifier, iNode> known = members.lowerEntry(newID);
+			if (known == null) {
+				known = members.lastEntry();
+			}
+			
+			// Only worth going to if it is closer to the new node than the finger
+			if (!known.getKey().equals(identifier)
+					&& newID.subtract(known.getKey()).compareTo(newID.subtract(nextHopID)) < 0) {
+				
+				// A Node that has left may still answer, so ask whether it is in the Ring
+				boolean inRing;
+				try {
+					inRing = known.getValue().isInRing();
+				} catch (RemoteException e) {
+					inRing = false;
+				}
+				
+				if (inRing) {
+					next = known.getValue();
+				}
+				
+				// Gone without saying so; the fingers will do
+				else {
+					members.remove(known.getKey(), known.getValue());
+				}
+			}
+		}
+		
+		next.addNodeToRing(newNode);
+	}
+	
+	public boolean isInRing() {
+		return inRing;
+	}
+	
+	public void memberJoined(Identifier nodeID, iNode node) {
+		
+		if (bootStrap) {
+			members.put(nodeID, node);
+		}
+	}
+	
+	public void memberLeft(Identifier nodeID) {
+		
+		if (!nodeID.equals(identifier)) {
+			members.remove(nodeID);
+		}
+	}
+	
+	/**
+	 * Assign the Node following this Node
+	 */
+	public void setNext(iNode next) throws RemoteException {
+		nextID = next.getID();
+		nextNode = next;
+	}
+	
+	/**
+	 * Assign the Node prior to this Node
+	 */
+	public void setPrev(iNode prev) throws RemoteException {
+		prevID = prev.getID();
+		prevNode = prev;
+	}
+
+	/**
+	 * @return Node following this Node
+	 */
+	public iNode getNext() {
+		return nextNode;
+	}
+
+	/**
+	 * @return Node preceding this Node
+	 */
+	public iNode getPrev() {
+		return prevNode;
+	}
+
+	/**
+	 * @return hashed IP address for this node
+	 */
+	public Identifier getID() {
+		return identifier;
+	}
+	
+	/**
+	 * @return unhashed IP address for this node
+	 */
+	private String getIP() {
+		return nodeIP;
+	}
+
+	/**
+	 * @return number of keys stored at this node, not counting replicas of other nodes' keys
+	 */
+	public int getKeyCount() {
+		return storage.size();
+	}
+
+	/**
+	 * @return counters and latencies of this node, also registered as a platform MBean
+	 */
+	public NodeMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Transfer all hash table data to the next node
+	 * unless this node was the largest in the ring, in which case
+	 * transfer all hash table data to the previous node
+	 */
+	public void leave() {
+		
+		// Refuse new nodes from here on, and have the bootstraps stop sending them here
+		inRing = false;
+		metrics.unregister();
+		
+		for (iNode bootstrap : bootstraps) {
+			try {
+				bootstrap.memberLeft(identifier);
+			} catch (RemoteException e) {
+				System.out.println("Problem telling bootstrap node of leaving");
+				metrics.remoteFailures.increment();
+			}
+		}
+		bootstraps.clear();
+		
+		try {
+			
+			// Point any fingers that refer to this node at the node following it instead
+			if (!nextID.equals(identifier)) {
+				
+				for (int i = 0; i < FingerTable.BITS; i++) {
+					
+					iNode p = precedingNodeFor(i);
+					
+					if (p != null) {
+						p.removeFromFingerTable(identifier, nextNode, nextID, i);
+					}
+				}
+			}
+			
+			// If this node is the largest in the ring, send all hash table data to previous node
+			if (identifier.compareTo(nextID) > 0) {
+				fullTransfer(prevNode);
+				
+				// Effectively remove this node from the Ring
+				nextNode.setPrev(prevNode);
+				prevNode.setNext(nextNode);
+			}
+			
+			// if this node is not the largest in the ring, send all hash table data to the next node
+			else if (identifier.compareTo(nextID) < 0) {
+				fullTransfer(nextNode);
+				
+				// Effectively remove this node from the Ring
+				nextNode.setPrev(prevNode);
+				prevNode.setNext(nextNode);
+			}
+			
+			// The nodes before this one need successor lists without it, and one further back a new list of the node after it
+			if (replicas > 0 && !nextID.equals(identifier)) {
+				prevNode.refreshSuccessors(replicas);
+			}
+			
+			// Back to being a ring of one in case this node joins again later
+			replicaStorage.clear();
+			synchronized (this) {
+				successors = new iNode[0];
+				successorIDs = new Identifier[0];
+				nextSuccessors = new iNode[0];
+			}
+			nextNode = self;
+			prevNode = self;
+			nextID = identifier;
+			prevID = identifier;
+			fingers = new FingerTable(self, identifier);
+			members.clear();
+			if (bootStrap) {
+				members.put(identifier, self);
+			}
+			
+		} catch (RemoteException e) {
+			System.out.println("For logging purposes: Problem leaving Ring");
+			metrics.remoteFailures.increment();
+		}
+	}
+	
+	/**
+	 * Stop a Node that will not be used again, without handing its keys on. Its metrics
+	 * are unregistered and its lookup threads stopped. Call leave() first to hand the keys on.
+	 */
+	public void shutdown() {
+		
+		inRing = false;
+		metrics.unregister();
+		lookups.shutdownNow();
+	}
+	
+	/**
+	 * Check if a key already exists in the DHT
+	 * @param key Unhashed key to search for
+	 * @return True if the key already exists, False if it does not
+	 * @throws RemoteException
+	 */
+	public boolean checkKeyExists(String key) throws RemoteException {
+		
+		Object test;
+
+			test = get(key);
+		
+		if (test != null) {
+			return true;
+		}
+		
+		return false;
+	}
+
+	/**
+	 * Return the requested data item based on hashing the key k.
+	 * @param k Unhashed key corresponding to the value/data that requester needs
+	 * @return The value/data corresponding to the Key k
+	 * @throws RemoteException
+	 */
+	public Object get(String k) throws RemoteException {
+
+		// Timed here, where a client asks, rather than at each Node the request passes through
+		long start = System.nanoTime();
+
+		try {
+			return get(Hash.hashID(k));
+		} finally {
+			metrics.gets.recordSince(start);
+		}
+	}
+
+	/**
+	 * Return the requested data item for an already hashed key
+	 * @param key Hashed key corresponding to the value/data that requester needs
+	 * @return The value/data corresponding to the key
+	 * @throws RemoteException
+	 */
+	public Object get(Identifier key) throws RemoteException {
+
+		// If the key falls within the range this node covers, I have the data
+		if (owns(key)) {
+			return storage.get(key);
+		}
+
+		// If the next node has the data, read it from there or from one of its replicas
+		if (key.isBetweenRightIncl(identifier, nextID)) {
+			metrics.forwards.increment();
+			return read(nextNode, successorsAfterNext(), key);
+		}
+
+		Node sibling = nearestSibling(key);
+		if (sibling != this) {
+			return sibling.get(key);
+		}
+
+		if (iterative) {
+			Hop owner = findOwner(key);
+			return read(owner.getNode(), owner.getReplicas(), key);
+		}
+
+		// Otherwise get it from the closest node to the key that I know of
+		return forwardTo(key).get(key);
+	}
+
+	/**
+	 * Return the data for many keys at once. The keys are sorted by their position on
+	 * the Ring so that each Node storing some of them is sent a single request for all of
+	 * its keys, and each Node after the first is found by asking the one before it.
+	 * @param keys Unhashed keys
+	 * @return The data for each key, or null for keys that are not in the DHT
+	 * @throws RemoteException
+	 */
+	public Map<String, Object> getAll(Collection<String> keys) throws RemoteException {
+		
+		TreeMap<Identifier, String> sorted = new TreeMap<Identifier, String>();
+		for (String k : keys) {
+			sorted.put(Hash.hashID(k), k);
+		}
+		
+		Identifier[] hashed = sorted.keySet().toArray(new Identifier[sorted.size()]);
+		Map<String, Object> results = new HashMap<String, Object>();
+		Hop owner = null;
+		int next = 0;
+		int attempts = 0;
+		
+		while (next < hashed.length) {
+			
+			Identifier first = hashed[next];
+			owner = owner == null ? findOwner(first) : walk(owner.getNode().nextHop(first), first, 1);
+			
+			// Only keys up to the owner's identifier can be stored there, unless the owner is
+			// the largest node, which is the only node storing keys beyond its identifier
+			boolean largest = first.compareTo(owner.getNodeID()) > 0;
+			int end = next + 1;
+			while (end < hashed.length && (largest || hashed[end].compareTo(owner.getNodeID()) <= 0)) {
+				end++;
+			}
+			
+			Identifier[] batch = new Identifier[end - next];
+			System.arraycopy(hashed, next, batch, 0, batch.length);
+			
+			Map<Identifier, Object> found = owner.getNode().getBatch(batch);
+			
+			int answered = 0;
+			while (answered < batch.length && found.containsKey(batch[answered])) {
+				results.put(sorted.get(batch[answered]), found.get(batch[answered]));
+				answered++;
+			}
+			
+			// Give up if the ring is changing too quickly for the owners to settle
+			if (answered == 0 && ++attempts > FingerTable.BITS) {
+				throw new RemoteException("Batch lookup for " + first + " did not reach the node storing it");
+			}
+			
+			next += answered;
+		}
+		
+		return results;
+	}
+	
+	public Map<Identifier, Object> getBatch(Identifier[] keys) {
+		
+		Map<Identifier, Object> found = new HashMap<Identifier, Object>();
+		
+		for (Identifier key : keys) {
+			if (owns(key)) {
+				found.put(key, storage.get(key));
+			}
+		}
+		
+		return found;
+	}
+
+	/**
+	 * Store value/data matching a hash of the given Key k
+	 * @param k Unhashed key corresponding to the given data
+	 * @param data The data to be stored at this node according to key K
+	 * @throws RemoteException
+	 */
+	public void put(String k, Object data) throws RemoteException {
+
+		long start = System.nanoTime();
+
+		try {
+			put(Hash.hashID(k), data);
+		} finally {
+			metrics.puts.recordSince(start);
+		}
+	}
+
+	/**
+	 * Store value/data matching an already hashed key
+	 * @param key Hashed key corresponding to the given data
+	 * @param data The data to be stored at the node covering the key
+	 * @throws RemoteException
+	 */
+	public void put(Identifier key, Object data) throws RemoteException {
+
+		Node sibling = nearestSibling(key);
+
+		// If the key falls within the range this node covers, I should store the data
+		if (owns(key)) {
+			storage.put(key, data);
+			replicate(new Identifier[] { key }, new Object[] { data });
+		}
+
+		// Or hand it to the virtual node of this host closest to the key
+		else if (sibling != this) {
+			sibling.put(key, data);
+		}
+
+		// Otherwise send it over to the closest node to the key that I know of
+		else {
+			forwardTo(key).put(key, data);
+		}
+	}
+	
+	/**
+	 * A user's mailbox is stored under its own key rather than the user's registration,
+	 * so it is moved, replicated and kept on disk along with every other key
+	 * @param username Username of the mailbox's owner
+	 * @return hashed key of the user's mailbox
+	 */
+	public static Identifier mailboxKey(String username) {
+		return Hash.hashID("mailbox:" + username);
+	}
+	
+	public boolean append(Identifier key, String message) throws RemoteException {
+		
+		// If the key falls within the range this node covers, the mailbox is here
+		if (owns(key)) {
+			
+			// Only the message is added to the log of a durable storage engine, not the whole mailbox again
+			synchronized (mailboxes) {
+				if (!storage.append(key, message, MAILBOX_CAPACITY)) {
+					return false;
+				}
+			}
+			
+			for (iNode successor : getSuccessorList()) {
+				try {
+					successor.appendReplica(key, message);
+				} catch (RemoteException e) {
+					System.out.println("Problem replicating mailbox to successor node");
+					metrics.remoteFailures.increment();
+				}
+			}
+			
+			return true;
+		}
+		
+		// Otherwise send it over to the closest node to the key that I know of
+		return forwardTo(key).append(key, message);
+	}
+	
+	public List<String> drain(Identifier key) throws RemoteException {
+		
+		if (!owns(key)) {
+			return forwardTo(key).drain(key);
+		}
+		
+		List<String> messages;
+		
+		synchronized (mailboxes) {
+			messages = mailbox(storage, key);
+			storage.remove(key);
+		}
+		
+		if (!messages.isEmpty()) {
+			for (iNode successor : getSuccessorList()) {
+				try {
+					successor.removeReplica(key);
+				} catch (RemoteException e) {
+					System.out.println("Problem removing mailbox replica from successor node");
+					metrics.remoteFailures.increment();
+				}
+			}
+		}
+		
+		return messages;
+	}
+	
+	public void appendReplica(Identifier key, String message) {
+		
+		synchronized (mailboxes) {
+			replicaStorage.append(key, message, MAILBOX_CAPACITY);
+		}
+	}
+	
+	/**
+	 * @param from this Node's storage or its replicas
+	 * @param key Hashed key of a mailbox
+	 * @return a copy of its messages, or an empty list if it has none
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<String> mailbox(Storage from, Identifier key) {
+		
+		Object stored = from.get(key);
+		
+		return stored instanceof List ? new ArrayList<String>((List<String>) stored) : new ArrayList<String>();
+	}
+	
+	/**
+	 * Removes a key/value pair from the DHT
+	 * @param k the unhashed key for removal
+	 */
+	public void remove(String k) {
+
+		long start = System.nanoTime();
+		remove(Hash.hashID(k));
+		metrics.removes.recordSince(start);
+	}
+	
+	/**
+	 * Removes a key/value pair from the DHT
+	 * @param key the hashed key for removal
+	 */
+	public void remove(Identifier key) {
+
+		try {
+			Node sibling = nearestSibling(key);
+
+			// If the key falls within the range this node covers, I have the data to be removed
+			if (owns(key)) {
+				storage.remove(key);
+				
+				// Each successor is told on its own, so one that cannot be reached does not leave the key readable at the others
+				for (iNode successor : getSuccessorList()) {
+					try {
+						successor.removeReplica(key);
+					} catch (RemoteException e) {
+						System.out.println("Problem removing replica from successor node");
+						metrics.remoteFailures.increment();
+					}
+				}
+			}
+
+			// Or hand it to the virtual node of this host closest to the key
+			else if (sibling != this) {
+				sibling.remove(key);
+			}
+
+			// Otherwise send it over to the closest node to the key that I know of
+			else {
+				forwardTo(key).remove(key);
+			}
+		} catch (RemoteException e) {
+			System.out.println("For logging purposes: Failed to remove key/data from DHT");
+			metrics.remoteFailures.increment();
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package distributedim;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms of one Node, registered as the platform MBean
+ * DistributedIM:type=Node,name=&lt;address&gt; so they can be read with JConsole or
+ * scraped by any JMX collector. Recording is lock-free and costs a clock read and
+ * a few atomic adds, so every operation is counted. A Node's metrics are registered
+ * while it is in the Ring, so a Node that has left or been shut down is not held on to.
+ * @author Kat Winter
+ */
+public class NodeMetrics implements NodeMetricsMBean {
+
+	// Metrics registered under each name, so a Node only ever unregisters its own
+	private static final ConcurrentHashMap<ObjectName, NodeMetrics> registered = new ConcurrentHashMap<ObjectName, NodeMetrics>();
+
+	private Storage storage;
+	private ObjectName name;
+
+	final Histogram gets = new Histogram();
+	final Histogram puts = new Histogram();
+	final Histogram removes = new Histogram();
+	final Histogram joins = new Histogram();
+	final Histogram hops = new Histogram();
+	final LongAdder forwards = new LongAdder();
+	final Histogram transfers = new Histogram();
+	final LongAdder keysTransferred = new LongAdder();
+	final LongAdder remoteFailures = new LongAdder();
+
+	/**
+	 * Constructor for the metrics of a Node
+	 * @param nodeIP unhashed IP address of the Node, which names the MBean
+	 * @param storage the Node's storage engine, for the number of keys it holds
+	 */
+	NodeMetrics(String nodeIP, Storage storage) {
+
+		this.storage = storage;
+
+		try {
+			name = new ObjectName("DistributedIM:type=Node,name=" + ObjectName.quote(nodeIP));
+		} catch (JMException e) {
+			System.out.println("Unable to name metrics for node " + nodeIP);
+		}
+	}
+
+	/**
+	 * Make the metrics visible through the platform MBean server, in place of those of
+	 * any earlier Node with the same address in this process
+	 */
+	void register() {
+
+		if (name == null) {
+			return;
+		}
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+		try {
+			synchronized (registered) {
+
+				if (registered.get(name) == this) {
+					return;
+				}
+
+				try {
+					server.registerMBean(this, name);
+				} catch (InstanceAlreadyExistsException e) {
+					server.unregisterMBean(name);
+					server.registerMBean(this, name);
+				}
+
+				registered.put(name, this);
+			}
+		} catch (JMException e) {
+			System.out.println("Unable to register metrics as " + name);
+		}
+	}
+
+	/**
+	 * Stop the metrics being visible through the platform MBean server, unless those of a
+	 * later Node with the same address have already taken their place
+	 */
+	void unregister() {
+
+		if (name == null) {
+			return;
+		}
+
+		try {
+			synchronized (registered) {
+				if (registered.remove(name, this)) {
+					ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+				}
+			}
+		} catch (JMException e) {
+			System.out.println("Unable to unregister metrics " + name);
+		}
+	}
+
+	public int getKeyCount() {
+		return storage.size();
+	}
+
+	public long getGetCount() {
+		return gets.getCount();
+	}
+
+	public long getGetP50Micros() {
+		return gets.getPercentile(0.5) / 1000;
+	}
+
+	public long getGetP99Micros() {
+		return gets.getPercentile(0.99) / 1000;
+	}
+
+	public long getPutCount() {
+		return puts.getCount();
+	}
+
+	public long getPutP50Micros() {
+		return puts.getPercentile(0.5) / 1000;
+	}
+
+	public long getPutP99Micros() {
+		return puts.getPercentile(0.99) / 1000;
+	}
+
+	public long getRemoveCount() {
+		return removes.getCount();
+	}
+
+	public long getRemoveP50Micros() {
+		return removes.getPercentile(0.5) / 1000;
+	}
+
+	public long getRemoveP99Micros() {
+		return removes.getPercentile(0.99) / 1000;
+	}
+
+	public long getJoinCount() {
+		return joins.getCount();
+	}
+
+	public long getJoinP50Micros() {
+		return joins.getPercentile(0.5) / 1000;
+	}
+
+	public long getJoinP99Micros() {
+		return joins.getPercentile(0.99) / 1000;
+	}
+
+	public long getLookupCount() {
+		return hops.getCount();
+	}
+
+	public long getLookupHopsMeanHundredths() {
+
+		long count = hops.getCount();
+		return count == 0 ? 0 : hops.getSum() * 100 / count;
+	}
+
+	public long getLookupHopsP99() {
+		return hops.getPercentile(0.99);
+	}
+
+	public long getForwardCount() {
+		return forwards.sum();
+	}
+
+	public long getTransferCount() {
+		return transfers.getCount();
+	}
+
+	public long getKeysTransferred() {
+		return keysTransferred.sum();
+	}
+
+	public long getTransferP50Millis() {
+		return transfers.getPercentile(0.5) / 1000000;
+	}
+
+	public long getTransferP99Millis() {
+		return transfers.getPercentile(0.99) / 1000000;
+	}
+
+	public long getRemoteFailureCount() {
+		return remoteFailures.sum();
+	}
+
+	public void reset() {
+
+		gets.reset();
+		puts.reset();
+		removes.reset();
+		joins.reset();
+		hops.reset();
+		forwards.reset();
+		transfers.reset();
+	}
+}
@@ -0,0 +1,91 @@
+package distributedim;
+
+/**
+ * Management interface of a Node's metrics. Keys transferred and remote failures are
+ * counted since the Node started, everything else since it started or was last reset.
+ * @author Kat Winter
+ */
+public interface NodeMetricsMBean {
+
+	/**
+	 * @return number of keys the Node stores, not counting replicas
+	 */
+	int getKeyCount();
+
+	/**
+	 * @return gets asked of the Node by its own clients. Requests forwarded to it by other
+	 * Nodes are not counted here but by the forward count of the Node that forwarded them.
+	 */
+	long getGetCount();
+
+	long getGetP50Micros();
+
+	long getGetP99Micros();
+
+	/**
+	 * @return puts asked of the Node by its own clients. Requests forwarded to it by other
+	 * Nodes are not counted here but by the forward count of the Node that forwarded them.
+	 */
+	long getPutCount();
+
+	long getPutP50Micros();
+
+	long getPutP99Micros();
+
+	/**
+	 * @return removes asked of the Node by its own clients. Requests forwarded to it by other
+	 * Nodes are not counted here but by the forward count of the Node that forwarded them.
+	 */
+	long getRemoveCount();
+
+	long getRemoveP50Micros();
+
+	long getRemoveP99Micros();
+
+	/**
+	 * @return joining Nodes this Node has placed in the Ring or passed on towards their place
+	 */
+	long getJoinCount();
+
+	long getJoinP50Micros();
+
+	long getJoinP99Micros();
+
+	/**
+	 * @return iterative lookups this Node has driven
+	 */
+	long getLookupCount();
+
+	/**
+	 * @return mean number of hops of the iterative lookups, in hundredths of a hop
+	 */
+	long getLookupHopsMeanHundredths();
+
+	long getLookupHopsP99();
+
+	/**
+	 * @return requests this Node has passed on to another Node, one per hop of a recursive lookup
+	 */
+	long getForwardCount();
+
+	/**
+	 * @return hand offs of keys to a joining Node or, on leaving, to a neighbour
+	 */
+	long getTransferCount();
+
+	long getKeysTransferred();
+
+	long getTransferP50Millis();
+
+	long getTransferP99Millis();
+
+	/**
+	 * @return calls to other Nodes that failed
+	 */
+	long getRemoteFailureCount();
+
+	/**
+	 * Forget the latencies and hops counted so far
+	 */
+	void reset();
+}
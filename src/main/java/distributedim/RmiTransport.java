@@ -0,0 +1,84 @@
+package distributedim;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.ExportException;
+import java.rmi.server.UnicastRemoteObject;
+
+/**
+ * Java RMI transport: Nodes are exported as RMI remote objects and the
+ * bootstrap is bound under a name, "bootstrap" by default, in a registry
+ * on a given port, 1099 by default. Rings using different registry ports
+ * or names can run side by side, in one process or several, and a ring may
+ * have several bootstraps, each in a registry of its own.
+ * @author Kat Winter
+ */
+public class RmiTransport implements Transport {
+
+	/** Name the bootstrap is bound under unless told otherwise */
+	public static final String DEFAULT_NAME = "bootstrap";
+
+	private int registryPort;
+	private String name;
+
+	/**
+	 * Constructor for the transport using the registry on port 1099 and the name "bootstrap"
+	 */
+	public RmiTransport() {
+		this(Registry.REGISTRY_PORT, DEFAULT_NAME);
+	}
+
+	/**
+	 * Constructor for the transport using a registry port and bootstrap name of its own
+	 * @param registryPort port of the registry the bootstrap is bound in and looked up from
+	 * @param name name the bootstrap is bound under
+	 */
+	public RmiTransport(int registryPort, String name) {
+
+		this.registryPort = registryPort;
+		this.name = name;
+	}
+
+	public iNode export(Node node, String nodeIP) throws RemoteException {
+		return (iNode) UnicastRemoteObject.exportObject(node, 0);
+	}
+
+	public void bind(iNode node) throws RemoteException {
+
+		Registry reg;
+
+		try {
+			reg = LocateRegistry.createRegistry(registryPort);
+		} catch (ExportException e) {
+			// Another ring in this process has already created the registry on this port
+			reg = LocateRegistry.getRegistry(registryPort);
+		}
+
+		reg.rebind(name, node);
+	}
+
+	/**
+	 * @param bootIP address of the bootstrap's registry, followed by :port if it is not on this transport's port
+	 */
+	public iNode bootstrap(String bootIP) throws RemoteException, NotBoundException {
+
+		String host = bootIP;
+		int port = registryPort;
+		int colon = bootIP.lastIndexOf(':');
+
+		// A single colon, or one after a bracketed IPv6 address, comes before a port
+		if (colon > 0 && (bootIP.indexOf(':') == colon || bootIP.charAt(colon - 1) == ']')) {
+			host = bootIP.substring(0, colon);
+			port = Integer.parseInt(bootIP.substring(colon + 1));
+		}
+
+		if (host.startsWith("[") && host.endsWith("]")) {
+			host = host.substring(1, host.length() - 1);
+		}
+
+		Registry reg = LocateRegistry.getRegistry(host, port);
+		return (iNode) reg.lookup(name);
+	}
+}
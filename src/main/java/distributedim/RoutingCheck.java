@@ -0,0 +1,140 @@
+package distributedim;
+
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Checks that lookups stay logarithmic as the Ring grows. Rings of each size are built
+ * in one JVM, as the Simulator builds them, and keys are read from random Nodes both
+ * the default recursive way, each Node forwarding the request, and iteratively. Hops of
+ * a recursive read are the requests Nodes forward for it, counted by their metrics, and
+ * those of an iterative one are the Nodes asked. Chord takes about half of log2 N hops
+ * on average and seldom more than log2 N, so the check fails, exiting with status 1, if
+ * at any size the mean or the 99th percentile of hops per lookup is above a fixed
+ * multiple of log2 N, as it would be once lookups fell back to walking the Ring one
+ * Node at a time.
+ * Usage: java distributedim.RoutingCheck [size,size,...] [lookups] [mean bound] [p99 bound] [registry port]
+ * @author Kat Winter
+ */
+public class RoutingCheck {
+
+	public static void main(String[] args) throws Exception {
+
+		String sizes = args.length > 0 ? args[0] : "16,64,256";
+		int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+		double meanBound = args.length > 2 ? Double.parseDouble(args[2]) : 1.0;
+		double p99Bound = args.length > 3 ? Double.parseDouble(args[3]) : 2.0;
+		int registryPort = args.length > 4 ? Integer.parseInt(args[4]) : Registry.REGISTRY_PORT + 1;
+
+		boolean failed = false;
+		int round = 0;
+
+		for (String size : sizes.split(",")) {
+
+			int count = Integer.parseInt(size.trim());
+			List<Node> ring = ring(round, count, registryPort + round);
+			round++;
+
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			int[] recursive = new int[lookups];
+			int[] iterative = new int[lookups];
+
+			for (int i = 0; i < lookups; i++) {
+
+				Node from = ring.get(random.nextInt(count));
+				Identifier key = Hash.hashID("key" + random.nextInt());
+
+				long before = forwards(ring);
+				from.get(key);
+				recursive[i] = (int) (forwards(ring) - before);
+
+				iterative[i] = from.findOwner(key).getHops();
+			}
+
+			// Rings of one or two Nodes take no hops to speak of, so count them as two
+			double log = Math.log(Math.max(4, count)) / Math.log(2);
+
+			failed |= !check("recursive", count, recursive, log, meanBound, p99Bound);
+			failed |= !check("iterative", count, iterative, log, meanBound, p99Bound);
+
+			for (int i = count - 1; i > 0; i--) {
+				ring.get(i).leave();
+			}
+			ring.get(0).shutdown();
+		}
+
+		if (failed) {
+			System.out.println("Hops per lookup grow faster than log2 N");
+		}
+
+		System.exit(failed ? 1 : 0);
+	}
+
+	/**
+	 * Print the hops of one way of looking keys up and check them against the bounds
+	 * @return True if they are within both
+	 */
+	private static boolean check(String mode, int count, int[] hops, double log, double meanBound, double p99Bound) {
+
+		Arrays.sort(hops);
+
+		long total = 0;
+		for (int h : hops) {
+			total += h;
+		}
+
+		double mean = (double) total / hops.length;
+		int p99 = hops[(int) Math.min(hops.length - 1, Math.ceil(hops.length * 0.99) - 1)];
+		boolean ok = mean <= meanBound * log && p99 <= p99Bound * log;
+
+		System.out.println(String.format("nodes=%d\t%s\tmean hops %.2f (%.2f log2 N)\tp99 hops %d (%.2f log2 N)\t%s",
+				count, mode, mean, mean / log, p99, p99 / log, ok ? "ok" : "FAIL"));
+
+		return ok;
+	}
+
+	/**
+	 * @return requests forwarded so far by every Node of a ring
+	 */
+	private static long forwards(List<Node> ring) {
+
+		long total = 0;
+		for (Node node : ring) {
+			total += node.getMetrics().getForwardCount();
+		}
+		return total;
+	}
+
+	/**
+	 * Build a ring of single Nodes bound through a registry port of its own
+	 * @param round number of the ring, which its Nodes' addresses are made from
+	 * @param count number of Nodes
+	 * @param registryPort port of the ring's registry
+	 * @return the Nodes, the bootstrap first
+	 */
+	private static List<Node> ring(int round, int count, int registryPort) throws Exception {
+
+		List<Node> ring = new ArrayList<Node>();
+
+		for (int i = 0; i < count; i++) {
+
+			Node node = new Node("check" + round + "-node" + i, new SkipListStorage(),
+					new RmiTransport(registryPort, RmiTransport.DEFAULT_NAME));
+
+			if (i == 0) {
+				node.create();
+			}
+
+			else {
+				node.join("localhost:" + registryPort);
+			}
+
+			ring.add(node);
+		}
+
+		return ring;
+	}
+}
@@ -0,0 +1,219 @@
+package distributedim;
+
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs whole rings of Nodes in one JVM to see how the DHT behaves as it grows.
+ * Each host is given a synthetic address, which is all its Nodes' identifiers are
+ * hashed from, and each ring binds its bootstrap in a registry port of its own, so
+ * rings of any size can be built one after another without a process per Node.
+ *
+ * For each ring size the simulator joins the hosts, puts keys and looks them up from
+ * random Nodes, then has a quarter of the hosts leave and reads every key again,
+ * reporting joins, lookups and leaves per second, hops per lookup and keys per host.
+ * Each size is run with one Node per host and again with the given number of virtual
+ * Nodes per host, to show how much more evenly the keys are spread. The first hosts
+ * of each ring are its bootstraps, each bound in a registry port of its own, and the
+ * other hosts join through any of them.
+ * Usage: java distributedim.Simulator [size,size,...] [keys] [lookups] [replicas] [virtual nodes] [registry port] [bootstrap name] [bootstraps]
+ * @author Kat Winter
+ */
+public class Simulator {
+
+	public static void main(String[] args) throws Exception {
+
+		String sizes = args.length > 0 ? args[0] : "16,64,256";
+		int keys = intArg(args, 1, 10000);
+		int lookups = intArg(args, 2, 10000);
+		int replicas = intArg(args, 3, 0);
+		int virtualNodes = intArg(args, 4, Host.DEFAULT_VIRTUAL_NODES);
+		int registryPort = intArg(args, 5, Registry.REGISTRY_PORT + 1);
+		String name = args.length > 6 ? args[6] : RmiTransport.DEFAULT_NAME;
+		int bootstraps = intArg(args, 7, 1);
+
+		int round = 0;
+		for (String size : sizes.split(",")) {
+
+			int hosts = Integer.parseInt(size.trim());
+
+			long single = simulate(round, hosts, 1, keys, lookups, replicas, bootstraps, registryPort + round * bootstraps, name);
+			round++;
+
+			if (virtualNodes > 1) {
+				long virtual = simulate(round, hosts, virtualNodes, keys, lookups, replicas, bootstraps, registryPort + round * bootstraps, name);
+				round++;
+
+				report("hosts=" + hosts + " keys per host stddev with " + virtualNodes + " virtual nodes",
+						virtual * 100 / Math.max(1, single), "% of single");
+			}
+		}
+
+		System.exit(0);
+	}
+
+	/**
+	 * Build one ring and run the workloads against it
+	 * @param round number of the ring, which its hosts' addresses are made from
+	 * @param count number of hosts
+	 * @param virtualNodes number of Nodes each host runs
+	 * @param keys number of keys put
+	 * @param lookups number of iterative lookups made
+	 * @param replicas replication factor of every Node
+	 * @param bootstraps number of hosts acting as bootstraps
+	 * @param registryPort registry port of the first bootstrap, the others taking the ports following it
+	 * @param name name the bootstraps are bound under
+	 * @return standard deviation of the number of keys per host, before any leave
+	 */
+	private static long simulate(int round, int count, int virtualNodes, int keys, int lookups, int replicas,
+			int bootstraps, int registryPort, String name) throws Exception {
+
+		String parameters = "hosts=" + count + " virtual=" + virtualNodes;
+		List<Host> hosts = new ArrayList<Host>();
+		List<Node> nodes = new ArrayList<Node>();
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+
+		StringBuilder bootIPs = new StringBuilder("localhost:" + registryPort);
+		for (int j = 1; j < bootstraps; j++) {
+			bootIPs.append(",localhost:").append(registryPort + j);
+		}
+
+		// Join
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+
+			Transport transport = new RmiTransport(registryPort + Math.min(i, bootstraps - 1), name);
+			Host host = new Host("sim" + round + "-host" + i, virtualNodes, transport);
+			host.setReplicationFactor(replicas);
+
+			if (i == 0) {
+				host.create();
+			}
+
+			// Bootstraps after the first join through the ones before them
+			else if (i < bootstraps) {
+				host.join(bootIPs.substring(0, bootIPs.indexOf(",localhost:" + (registryPort + i))));
+				host.beBootStrap();
+			}
+
+			else {
+				host.join(bootIPs.toString());
+			}
+
+			hosts.add(host);
+			nodes.addAll(host.getNodes());
+		}
+		long nanos = Math.max(1, System.nanoTime() - start);
+		report(parameters + " join", count * 1000000000L / nanos, "hosts/s");
+
+		// Every Node an addNodeToRing call reached, per Node joined, the first of them being the bootstrap
+		long forwards = 0;
+		for (Node node : nodes) {
+			forwards += node.getMetrics().getJoinCount();
+		}
+		report(parameters + " join forwards", forwards * 100 / Math.max(1, nodes.size() - 1), "hundredths per node");
+
+		// Put
+		start = System.nanoTime();
+		for (int i = 0; i < keys; i++) {
+			hosts.get(random.nextInt(count)).put("user" + i, "10.0." + (i >> 8 & 0xff) + "." + (i & 0xff));
+		}
+		nanos = Math.max(1, System.nanoTime() - start);
+		report(parameters + " put", keys * 1000000000L / nanos, "ops/s");
+
+		// Lookup
+		long hops = 0;
+		int maxHops = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < lookups; i++) {
+			Hop owner = nodes.get(random.nextInt(nodes.size())).findOwner(Hash.hashID("user" + random.nextInt(keys)));
+			hops += owner.getHops();
+			maxHops = Math.max(maxHops, owner.getHops());
+		}
+		nanos = Math.max(1, System.nanoTime() - start);
+		report(parameters + " lookup", lookups * 1000000000L / nanos, "ops/s");
+		report(parameters + " hops per lookup mean", hops * 100 / lookups, "hundredths");
+		report(parameters + " hops per lookup max", maxHops, "hops");
+
+		// Keys per host
+		long deviation = reportLoad(parameters, hosts);
+
+		// Leave
+		List<Host> leaving = new ArrayList<Host>(hosts.subList(1, count));
+		Collections.shuffle(leaving, random);
+		leaving = leaving.subList(0, (count - 1) / 4);
+
+		start = System.nanoTime();
+		for (Host host : leaving) {
+			host.leave();
+			hosts.remove(host);
+		}
+		nanos = Math.max(1, System.nanoTime() - start);
+		if (!leaving.isEmpty()) {
+			report(parameters + " leave " + leaving.size(), leaving.size() * 1000000000L / nanos, "hosts/s");
+		}
+
+		int lost = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < keys; i++) {
+			if (hosts.get(random.nextInt(hosts.size())).get("user" + i) == null) {
+				lost++;
+			}
+		}
+		nanos = Math.max(1, System.nanoTime() - start);
+		report(parameters + " get after leave", keys * 1000000000L / nanos, "ops/s");
+		report(parameters + " lost after leave", lost, "keys");
+		reportLoad(parameters + " after leave", hosts);
+
+		// The ring is not used again, so let its Nodes go
+		for (Host host : hosts) {
+			host.shutdown();
+		}
+
+		return deviation;
+	}
+
+	/**
+	 * Report the fewest, mean and most keys stored by the hosts of a ring, and their standard deviation
+	 * @return the standard deviation
+	 */
+	private static long reportLoad(String parameters, List<Host> hosts) {
+
+		int min = Integer.MAX_VALUE;
+		int max = 0;
+		long total = 0;
+		long squares = 0;
+
+		for (Host host : hosts) {
+			int count = host.getKeyCount();
+			min = Math.min(min, count);
+			max = Math.max(max, count);
+			total += count;
+			squares += (long) count * count;
+		}
+
+		double mean = (double) total / hosts.size();
+		long deviation = Math.round(Math.sqrt(Math.max(0, (double) squares / hosts.size() - mean * mean)));
+
+		report(parameters + " keys per host min", min, "keys");
+		report(parameters + " keys per host mean", Math.round(mean), "keys");
+		report(parameters + " keys per host max", max, "keys");
+		report(parameters + " keys per host stddev", deviation, "keys");
+
+		return deviation;
+	}
+
+	/**
+	 * Print one result line: what was measured, its parameters, and the value with its unit
+	 */
+	private static void report(String parameters, long value, String unit) {
+		System.out.println("simulator\t" + parameters + "\t" + value + " " + unit);
+	}
+
+	private static int intArg(String[] args, int index, int defaultValue) {
+		return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+	}
+}
@@ -0,0 +1,82 @@
+package distributedim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Default storage engine for a Node: a concurrent skip list sorted by ring position.
+ * Finding the range of keys to hand to another Node costs O(log n) and
+ * reads and writes never block each other.
+ * @author Kat Winter
+ */
+public class SkipListStorage implements Storage {
+
+	private ConcurrentSkipListMap<Identifier, Object> entries;
+
+	/**
+	 * Constructor for an empty storage engine
+	 */
+	public SkipListStorage() {
+		entries = new ConcurrentSkipListMap<Identifier, Object>();
+	}
+
+	public Object get(Identifier key) {
+		return entries.get(key);
+	}
+
+	public void put(Identifier key, Object data) {
+		entries.put(key, data);
+	}
+
+	public void remove(Identifier key) {
+		entries.remove(key);
+	}
+
+	public boolean remove(Identifier key, Object data) {
+		return entries.remove(key, data);
+	}
+
+	@SuppressWarnings("unchecked")
+	public synchronized boolean append(Identifier key, String item, int limit) {
+
+		Object stored = entries.get(key);
+		List<String> list = stored instanceof List ? (List<String>) stored : new ArrayList<String>();
+
+		if (list.size() >= limit) {
+			return false;
+		}
+
+		// Stored lists are never changed in place, since other Nodes in this JVM may share them
+		list = new ArrayList<String>(list);
+		list.add(item);
+		entries.put(key, list);
+
+		return true;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public SortedMap<Identifier, Object> upTo(Identifier key) {
+		return entries.headMap(key, true);
+	}
+
+	public SortedMap<Identifier, Object> after(Identifier key) {
+		return entries.tailMap(key, false);
+	}
+
+	public SortedMap<Identifier, Object> all() {
+		return entries;
+	}
+}
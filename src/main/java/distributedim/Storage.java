@@ -0,0 +1,83 @@
+package distributedim;
+
+import java.util.SortedMap;
+
+/**
+ * Storage engine for the key/data pairs held by a Node.
+ * Keys are kept sorted by their position on the ring so the keys that
+ * move to another Node can be found as a range rather than by scanning.
+ * Implementations must be safe to use from several RMI threads at once.
+ * The range views are for reading; keys are always removed through the
+ * storage itself so that engines which record changes see every removal.
+ * @author Kat Winter
+ */
+public interface Storage {
+
+	/**
+	 * @param key Hashed key
+	 * @return data stored for the key, or null if there is none
+	 */
+	Object get(Identifier key);
+
+	/**
+	 * Store data for a key, replacing anything already stored for it
+	 * @param key Hashed key
+	 * @param data Data to store
+	 */
+	void put(Identifier key, Object data);
+
+	/**
+	 * @param key Hashed key to remove along with its data
+	 */
+	void remove(Identifier key);
+
+	/**
+	 * Remove a key only if it is still stored with the given data
+	 * @param key Hashed key to remove
+	 * @param data Data the key is expected to hold
+	 * @return True if the key was removed
+	 */
+	boolean remove(Identifier key, Object data);
+
+	/**
+	 * Add a String to the end of the list stored for a key, starting a list if there
+	 * is none. Engines that record changes record only the String added, not the list.
+	 * @param key Hashed key
+	 * @param item String to add
+	 * @param limit Most items the list may hold
+	 * @return True if it was added, false if the list already held limit items
+	 */
+	boolean append(Identifier key, String item, int limit);
+
+	/**
+	 * @return number of keys stored
+	 */
+	int size();
+
+	/**
+	 * @return True if no keys are stored
+	 */
+	boolean isEmpty();
+
+	/**
+	 * Remove every key
+	 */
+	void clear();
+
+	/**
+	 * @param key Hashed key
+	 * @return live view of the stored keys up to and including key, in ring order
+	 */
+	SortedMap<Identifier, Object> upTo(Identifier key);
+
+	/**
+	 * @param key Hashed key
+	 * @return live view of the stored keys strictly after key, in ring order
+	 */
+	SortedMap<Identifier, Object> after(Identifier key);
+
+	/**
+	 * @return live view of every stored key, in ring order
+	 */
+	SortedMap<Identifier, Object> all();
+}
@@ -1,3 +1,5 @@
+package distributedim;
+
 
 public class TestClient {
 	
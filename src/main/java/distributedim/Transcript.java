@@ -0,0 +1,211 @@
+package distributedim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The lines of one conversation. Only the most recent lines are kept in memory, in a
+ * ring buffer of fixed size, so a long conversation cannot use up the heap; older ones
+ * are read back from the transcript's store when asked for, or are gone if it has none.
+ *
+ * Lines are numbered from the first line the store holds, and may be added from any thread.
+ * Several transcripts may write to the same store, as conversations with the same partner
+ * share its history, so each remembers where in the store its own lines went.
+ * @author Kat Winter
+ */
+public class Transcript {
+
+	/** Default number of lines kept in memory */
+	public static final int DEFAULT_CAPACITY = 500;
+
+	/**
+	 * Where the lines of a transcript are kept for good
+	 */
+	public interface Store {
+
+		/**
+		 * @return number of lines held
+		 */
+		long size();
+
+		/**
+		 * @param line line to add after the others
+		 * @return number of the line in the store
+		 */
+		long append(String line);
+
+		/**
+		 * @param from number of the first line wanted
+		 * @param count number of lines wanted
+		 * @return the lines, which may be fewer than asked for
+		 */
+		List<String> read(long from, int count);
+
+		/**
+		 * Called once by each transcript writing to the store when it is closed
+		 */
+		void close();
+	}
+
+	private String[] lines;
+	private long next;
+	private Store store;
+
+	// Where in the store each run of consecutive lines of this transcript begins, by the
+	// number of its first line. Lines the store held beforehand are the first run.
+	private TreeMap<Long, Long> runs;
+
+	/**
+	 * Constructor for a transcript that keeps no lines beyond those in memory
+	 * @param capacity number of lines kept in memory
+	 */
+	public Transcript(int capacity) {
+		this(capacity, null);
+	}
+
+	/**
+	 * Constructor for a transcript, which carries on from whatever the store already holds
+	 * @param capacity number of lines kept in memory
+	 * @param store where every line is also written, or null for none
+	 */
+	public Transcript(int capacity, Store store) {
+
+		lines = new String[capacity];
+		this.store = store;
+		next = store == null ? 0 : store.size();
+		runs = new TreeMap<Long, Long>();
+		runs.put(0L, 0L);
+	}
+
+	/**
+	 * @param line line to add after the others
+	 */
+	public synchronized void add(String line) {
+
+		if (store != null) {
+
+			long stored = store.append(line);
+
+			// Another transcript wrote to the store since this one last did
+			if (stored != position(next)) {
+				runs.put(next, stored);
+			}
+		}
+
+		lines[(int) (next % lines.length)] = line;
+		next++;
+	}
+
+	/**
+	 * Stop writing to the store, which is closed once no transcript writes to it.
+	 * The lines in memory can still be read.
+	 */
+	public synchronized void close() {
+
+		if (store != null) {
+			store.close();
+			store = null;
+		}
+	}
+
+	/**
+	 * @return number the next line added will have
+	 */
+	public synchronized long getEnd() {
+		return next;
+	}
+
+	/**
+	 * @return number of the oldest line, in memory or in the store
+	 */
+	public synchronized long getStart() {
+		return store == null ? getFirstKept() : 0;
+	}
+
+	/**
+	 * Lines from a given one on, as far as they are still in memory
+	 * @param from number of the first line wanted
+	 * @return the lines, starting with the oldest one still in memory if that is later
+	 */
+	public synchronized List<String> since(long from) {
+
+		List<String> result = new ArrayList<String>((int) Math.max(0, next - Math.max(from, getFirstKept())));
+		since(from, result);
+		return result;
+	}
+
+	/**
+	 * Lines from a given one on, as far as they are still in memory, along with the number
+	 * of the first of them, both taken at once so no line can be added in between
+	 * @param from number of the first line wanted
+	 * @param into list to add the lines to
+	 * @return number of the first line added, later than from if that is no longer in memory
+	 */
+	public synchronized long since(long from, List<String> into) {
+
+		from = Math.max(from, getFirstKept());
+
+		for (long i = from; i < next; i++) {
+			into.add(lines[(int) (i % lines.length)]);
+		}
+
+		return from;
+	}
+
+	/**
+	 * Lines before a given one, for scrolling back
+	 * @param before number of the line after the last one wanted
+	 * @param count number of lines wanted
+	 * @return the lines, fewer than asked for at the start of the transcript
+	 */
+	public List<String> earlier(long before, int count) {
+
+		long from;
+		Store reading;
+		TreeMap<Long, Long> reads = new TreeMap<Long, Long>();
+
+		synchronized (this) {
+
+			from = Math.max(getStart(), before - count);
+
+			if (from >= getFirstKept()) {
+				List<String> result = since(from);
+				return result.subList(0, (int) (before - from));
+			}
+
+			reading = store;
+			reads.put(from, position(from));
+			for (Map.Entry<Long, Long> run : runs.subMap(from, false, before, false).entrySet()) {
+				reads.put(run.getKey(), run.getValue());
+			}
+		}
+
+		// Read outside the lock so that adding lines does not wait for the store
+		List<String> result = new ArrayList<String>((int) (before - from));
+
+		for (Map.Entry<Long, Long> run : reads.entrySet()) {
+
+			Long end = reads.higherKey(run.getKey());
+			long length = (end != null ? end : before) - run.getKey();
+			result.addAll(reading.read(run.getValue(), (int) length));
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param line number of a line of this transcript
+	 * @return number the line has in the store
+	 */
+	private long position(long line) {
+
+		Map.Entry<Long, Long> run = runs.floorEntry(line);
+		return run.getValue() + line - run.getKey();
+	}
+
+	private long getFirstKept() {
+		return Math.max(0, next - lines.length);
+	}
+}
@@ -0,0 +1,36 @@
+package distributedim;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+
+/**
+ * The means by which Nodes in the DHT reach each other. Every Node in a Ring
+ * must use the same kind of transport.
+ * @author Kat Winter
+ */
+public interface Transport {
+
+	/**
+	 * Make a Node reachable by other Nodes
+	 * @param node the Node
+	 * @param nodeIP unhashed IP address of the Node
+	 * @return the reference to the Node to hand out to other Nodes
+	 * @throws RemoteException if the Node cannot be made reachable
+	 */
+	iNode export(Node node, String nodeIP) throws RemoteException;
+
+	/**
+	 * Make a Node reachable as the bootstrap for new Nodes joining the Ring
+	 * @param node reference to the Node returned by export
+	 * @throws RemoteException if the Node cannot be bound as a bootstrap
+	 */
+	void bind(iNode node) throws RemoteException;
+
+	/**
+	 * @param bootIP address of a Node acting as bootstrap
+	 * @return reference to the bootstrap Node
+	 * @throws RemoteException if the bootstrap cannot be reached
+	 * @throws NotBoundException if there is no bootstrap at that address
+	 */
+	iNode bootstrap(String bootIP) throws RemoteException, NotBoundException;
+}
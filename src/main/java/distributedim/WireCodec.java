@@ -0,0 +1,264 @@
+package distributedim;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of the arguments and results of iNode calls for the NIO transport.
+ * The types that make up almost all DHT traffic (Strings, Identifiers, Node references,
+ * arrays and maps of them) have their own short encodings; anything else falls back
+ * to Java serialization.
+ * @author Kat Winter
+ */
+public class WireCodec {
+
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte IDENTIFIER = 2;
+	private static final byte INT = 3;
+	private static final byte BOOLEAN = 4;
+	private static final byte NODE = 5;
+	private static final byte IDENTIFIER_ARRAY = 6;
+	private static final byte NODE_ARRAY = 7;
+	private static final byte OBJECT_ARRAY = 8;
+	private static final byte MAP = 9;
+	private static final byte LIST = 10;
+	private static final byte HOP = 11;
+	private static final byte SERIALIZED = 12;
+
+	/**
+	 * Write a value
+	 * @param out stream to write to
+	 * @param value value to write
+	 * @throws IOException if the value cannot be encoded
+	 */
+	public static void write(DataOutputStream out, Object value) throws IOException {
+
+		if (value == null) {
+			out.writeByte(NULL);
+		}
+
+		else if (value instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		}
+
+		else if (value instanceof Identifier) {
+			out.writeByte(IDENTIFIER);
+			writeIdentifier(out, (Identifier) value);
+		}
+
+		else if (value instanceof Integer) {
+			out.writeByte(INT);
+			out.writeInt((Integer) value);
+		}
+
+		else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		}
+
+		else if (value instanceof iNode) {
+			out.writeByte(NODE);
+			writeString(out, NioTransport.addressOf((iNode) value));
+		}
+
+		else if (value instanceof Identifier[]) {
+			Identifier[] ids = (Identifier[]) value;
+			out.writeByte(IDENTIFIER_ARRAY);
+			out.writeInt(ids.length);
+			for (Identifier id : ids) {
+				writeIdentifier(out, id);
+			}
+		}
+
+		else if (value instanceof iNode[]) {
+			iNode[] nodes = (iNode[]) value;
+			out.writeByte(NODE_ARRAY);
+			out.writeInt(nodes.length);
+			for (iNode node : nodes) {
+				write(out, node);
+			}
+		}
+
+		else if (value instanceof Object[]) {
+			Object[] objects = (Object[]) value;
+			out.writeByte(OBJECT_ARRAY);
+			out.writeInt(objects.length);
+			for (Object object : objects) {
+				write(out, object);
+			}
+		}
+
+		else if (value instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			out.writeByte(MAP);
+			out.writeInt(map.size());
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				write(out, entry.getKey());
+				write(out, entry.getValue());
+			}
+		}
+
+		else if (value instanceof Collection) {
+			Collection<?> collection = (Collection<?>) value;
+			out.writeByte(LIST);
+			out.writeInt(collection.size());
+			for (Object object : collection) {
+				write(out, object);
+			}
+		}
+
+		else if (value instanceof Hop) {
+			Hop hop = (Hop) value;
+			out.writeByte(HOP);
+			write(out, hop.getNode());
+			write(out, hop.getNodeID());
+			out.writeBoolean(hop.isOwner());
+			out.writeInt(hop.getHops());
+			write(out, hop.getReplicas());
+		}
+
+		else {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+			objectOut.writeObject(value);
+			objectOut.close();
+
+			out.writeByte(SERIALIZED);
+			out.writeInt(bytes.size());
+			bytes.writeTo(out);
+		}
+	}
+
+	/**
+	 * Read a value written by write
+	 * @param in stream to read from
+	 * @return the value
+	 * @throws IOException if the stream does not hold a valid value
+	 */
+	public static Object read(DataInputStream in) throws IOException {
+
+		byte type = in.readByte();
+
+		switch (type) {
+
+		case NULL:
+			return null;
+
+		case STRING:
+			return readString(in);
+
+		case IDENTIFIER:
+			return readIdentifier(in);
+
+		case INT:
+			return in.readInt();
+
+		case BOOLEAN:
+			return in.readBoolean();
+
+		case NODE:
+			return NioTransport.stub(readString(in));
+
+		case IDENTIFIER_ARRAY: {
+			Identifier[] ids = new Identifier[in.readInt()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = readIdentifier(in);
+			}
+			return ids;
+		}
+
+		case NODE_ARRAY: {
+			iNode[] nodes = new iNode[in.readInt()];
+			for (int i = 0; i < nodes.length; i++) {
+				nodes[i] = (iNode) read(in);
+			}
+			return nodes;
+		}
+
+		case OBJECT_ARRAY: {
+			Object[] objects = new Object[in.readInt()];
+			for (int i = 0; i < objects.length; i++) {
+				objects[i] = read(in);
+			}
+			return objects;
+		}
+
+		case MAP: {
+			int size = in.readInt();
+			Map<Object, Object> map = new HashMap<Object, Object>(size * 2);
+			for (int i = 0; i < size; i++) {
+				map.put(read(in), read(in));
+			}
+			return map;
+		}
+
+		case LIST: {
+			int size = in.readInt();
+			List<Object> list = new ArrayList<Object>(size);
+			for (int i = 0; i < size; i++) {
+				list.add(read(in));
+			}
+			return list;
+		}
+
+		case HOP: {
+			Hop hop = new Hop((iNode) read(in), (Identifier) read(in), in.readBoolean());
+			hop.setHops(in.readInt());
+			hop.setReplicas((iNode[]) read(in));
+			return hop;
+		}
+
+		case SERIALIZED: {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			try {
+				return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException("Received data of an unknown class", e);
+			}
+		}
+
+		default:
+			throw new IOException("Unknown value type " + type);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeIdentifier(DataOutputStream out, Identifier id) throws IOException {
+
+		out.writeLong(id.getHigh());
+		out.writeLong(id.getMid());
+		out.writeInt(id.getLow());
+	}
+
+	private static Identifier readIdentifier(DataInputStream in) throws IOException {
+		return new Identifier(in.readLong(), in.readLong(), in.readInt());
+	}
+}
@@ -0,0 +1,281 @@
+package distributedim;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interface for a remote instance of a node in a DHT ring
+ * @author Kat Winter
+ */
+public interface iNode extends Remote {
+	
+	/**
+	 * @return hashed IP address of this node
+	 * @throws RemoteException
+	 */
+	Identifier getID() throws RemoteException;
+	
+	/**
+	 * Removes a key/value pair from the DHT
+	 * @param k the unhashed key for removal
+	 * @throws RemoteException
+	 */
+	void remove(String k) throws RemoteException;
+	
+	/**
+	 * Removes a key/value pair from the DHT
+	 * @param key the hashed key for removal
+	 * @throws RemoteException
+	 */
+	void remove(Identifier key) throws RemoteException;
+	
+	/**
+	 * Transfer appropriate data over to a new Node
+	 * Precondition: The new Node is located directly previous
+	 * to this Node and has just joined the Ring
+	 * @param newNode Node just joining the ring
+	 * @throws RemoteException
+	 */
+	void transferData(iNode newNode) throws RemoteException;
+	
+	/**
+	 * Insert a key/data pair directly to this Node
+	 * Does not perform any check in this method to see if the
+	 * values should be stored at this Node
+	 * @param key Hashed key to be stored
+	 * @param data Data to be stored corresponding to the key parameter
+	 * @throws RemoteException
+	 */
+	void insert(Identifier key, Object data) throws RemoteException;
+	
+	/**
+	 * Insert a batch of key/data pairs directly to this Node, as one chunk
+	 * of a bulk transfer during a join or leave
+	 * Does not perform any check in this method to see if the
+	 * values should be stored at this Node
+	 * @param keys Hashed keys to be stored
+	 * @param data Data to be stored, in the same order as the keys
+	 * @return Number of pairs stored, acknowledging the chunk
+	 * @throws RemoteException
+	 */
+	int insertBatch(Identifier[] keys, Object[] data) throws RemoteException;
+	
+	/**
+	 * Add the specified Node into the Ring at appropriate location
+	 * based on the hashed key of the Node's IP
+	 * @param node The node to be added
+	 * @throws RemoteException
+	 */
+	void addNodeToRing(iNode node) throws RemoteException;
+	
+	/**
+	 * @return True if this Node is part of a Ring, False once it has left
+	 * @throws RemoteException
+	 */
+	boolean isInRing() throws RemoteException;
+	
+	/**
+	 * Update on what Node directly follows this Node
+	 * @param node Node now following this Node
+	 * @throws RemoteException
+	 */
+	void setNext(iNode node) throws RemoteException;
+	
+	/**
+	 * Update on what Node directly precedes this Node
+	 * @param node Node now preceding this Node
+	 * @throws RemoteException
+	 */
+	void setPrev(iNode node) throws RemoteException;
+	
+	/**
+	 * Return the requested data item based on hashing the key k.
+	 * @param k Unhashed key corresponding to the value/data that requester needs
+	 * @return The value/data corresponding to the Key k
+	 * @throws RemoteException
+	 */
+	Object get(String k) throws RemoteException;
+	
+	/**
+	 * Return the requested data item for an already hashed key, so the key
+	 * is hashed only once no matter how many Nodes the request passes through
+	 * @param key Hashed key corresponding to the value/data that requester needs
+	 * @return The value/data corresponding to the key
+	 * @throws RemoteException
+	 */
+	Object get(Identifier key) throws RemoteException;
+	
+	/**
+	 * Return the requested data items for many keys at once, sending one
+	 * request to each Node that stores any of them
+	 * @param keys Unhashed keys corresponding to the values/data that requester needs
+	 * @return The value/data for each key, or null for keys that are not in the DHT
+	 * @throws RemoteException
+	 */
+	Map<String, Object> getAll(Collection<String> keys) throws RemoteException;
+	
+	/**
+	 * Return the data for every key in a batch that this Node stores
+	 * @param keys Hashed keys, sorted by their position on the Ring
+	 * @return The data for each key stored at this Node (null if the key has no data).
+	 * Keys this Node does not cover are left out.
+	 * @throws RemoteException
+	 */
+	Map<Identifier, Object> getBatch(Identifier[] keys) throws RemoteException;
+	
+	/**
+	 * Store value/data matching a hash of the given Key k
+	 * @param k Unhashed key corresponding to the given data
+	 * @param data The data to be stored at this node according to key K
+	 * @throws RemoteException
+	 */
+	void put(String k, Object data) throws RemoteException;
+	
+	/**
+	 * Store value/data matching an already hashed key
+	 * @param key Hashed key corresponding to the given data
+	 * @param data The data to be stored at the Node covering the key
+	 * @throws RemoteException
+	 */
+	void put(Identifier key, Object data) throws RemoteException;
+	
+	/**
+	 * Add a message to the end of a mailbox, for a user who cannot be reached right now
+	 * @param key Hashed key of the mailbox
+	 * @param message The message
+	 * @return True if the message was added, False if the mailbox is full
+	 * @throws RemoteException
+	 */
+	boolean append(Identifier key, String message) throws RemoteException;
+	
+	/**
+	 * Take every message out of a mailbox at once
+	 * @param key Hashed key of the mailbox
+	 * @return The messages, oldest first, or an empty list if there are none
+	 * @throws RemoteException
+	 */
+	List<String> drain(Identifier key) throws RemoteException;
+	
+	/**
+	 * Find the first Node at or following the given position on the ring
+	 * @param id Hashed position on the ring
+	 * @return Node that directly succeeds the position
+	 * @throws RemoteException
+	 */
+	iNode findSuccessor(Identifier id) throws RemoteException;
+	
+	/**
+	 * Find the Node whose successor is the first Node at or following the given position
+	 * @param id Hashed position on the ring
+	 * @return Node that directly precedes the position
+	 * @throws RemoteException
+	 */
+	iNode findPredecessor(Identifier id) throws RemoteException;
+	
+	/**
+	 * Offer a Node as the new entry for finger i of this Node. The offer is passed on
+	 * to the previous Node for as long as it continues to improve the finger tables.
+	 * @param node Node that has just joined the Ring
+	 * @param nodeID Hashed IP address of the joining Node
+	 * @param i Index of the finger to update
+	 * @throws RemoteException
+	 */
+	void updateFingerTable(iNode node, Identifier nodeID, int i) throws RemoteException;
+	
+	/**
+	 * Tell a bootstrap that a Node has joined the Ring, so it can send new Nodes
+	 * straight to it. Nodes that are not bootstraps ignore this.
+	 * @param nodeID Hashed IP address of the Node that has joined
+	 * @param node the Node
+	 * @throws RemoteException
+	 */
+	void memberJoined(Identifier nodeID, iNode node) throws RemoteException;
+	
+	/**
+	 * Tell a bootstrap that a Node which announced itself to it has left the Ring,
+	 * so new Nodes are no longer sent to it
+	 * @param nodeID Hashed IP address of the Node that has left
+	 * @throws RemoteException
+	 */
+	void memberLeft(Identifier nodeID) throws RemoteException;
+	
+	/**
+	 * Replace finger i of this Node if it refers to a Node that is leaving the Ring. The
+	 * replacement is passed on to the previous Node for as long as its finger also needs it.
+	 * @param oldID Hashed IP address of the Node leaving the Ring
+	 * @param replacement Node that follows the leaving Node
+	 * @param replacementID Hashed IP address of the replacement
+	 * @param i Index of the finger to update
+	 * @throws RemoteException
+	 */
+	void removeFromFingerTable(Identifier oldID, iNode replacement, Identifier replacementID, int i) throws RemoteException;
+	
+	/**
+	 * One step of an iterative lookup: rather than forwarding the request, tell
+	 * the requester which Node to ask next
+	 * @param key Hashed key being looked up
+	 * @return this Node if it stores the key, otherwise the next Node to ask
+	 * @throws RemoteException
+	 */
+	Hop nextHop(Identifier key) throws RemoteException;
+	
+	/**
+	 * @return the Nodes directly following this Node, nearest first, which hold
+	 * replicas of the keys stored at this Node
+	 * @throws RemoteException
+	 */
+	iNode[] getSuccessorList() throws RemoteException;
+	
+	/**
+	 * Rebuild this Node's successor list after a Node has joined or left just after it.
+	 * Nodes newly in the list are sent replicas of this Node's keys and Nodes no
+	 * longer in it are told to drop them.
+	 * @param depth Number of further previous Nodes that also need to rebuild their lists
+	 * @throws RemoteException
+	 */
+	void refreshSuccessors(int depth) throws RemoteException;
+	
+	/**
+	 * Store replicas of keys owned by a Node shortly before this one
+	 * @param keys Hashed keys to be stored
+	 * @param data Data to be stored, in the same order as the keys
+	 * @return Number of replicas stored, acknowledging the chunk
+	 * @throws RemoteException
+	 */
+	int storeReplicas(Identifier[] keys, Object[] data) throws RemoteException;
+	
+	/**
+	 * Drop the replica of a key that has been removed from the DHT
+	 * @param key Hashed key
+	 * @throws RemoteException
+	 */
+	void removeReplica(Identifier key) throws RemoteException;
+	
+	/**
+	 * Drop every replica in a range of keys owned by a Node that no longer replicates here
+	 * @param low Lowest key to keep (everything above it is dropped), or null to drop from the start of the ring
+	 * @param high Highest key to drop, or null to drop to the end of the ring
+	 * @throws RemoteException
+	 */
+	void dropReplicas(Identifier low, Identifier high) throws RemoteException;
+	
+	/**
+	 * Add a message to this Node's replica of a mailbox, so that appending to a mailbox
+	 * sends its successors the new message rather than the whole mailbox
+	 * @param key Hashed key of the mailbox
+	 * @param message The message
+	 * @throws RemoteException
+	 */
+	void appendReplica(Identifier key, String message) throws RemoteException;
+	
+	/**
+	 * Return the data for a key that this Node either stores or holds a replica of
+	 * @param key Hashed key
+	 * @return The data, or null if this Node has neither
+	 * @throws RemoteException
+	 */
+	Object getReplica(Identifier key) throws RemoteException;
+}